@@ -65,6 +65,14 @@ public interface EventService extends ResourceService<Event, Authentication> {
      */
     List<Event> getUserEvents(String eventType, Authentication authentication);
 
+    /**
+     * Get the latest event of each type and service created by the user, using a single query.
+     *
+     * @param authentication
+     * @return a map with event types as keys and maps of service IDs to events as values.
+     */
+    Map<String, Map<String, Event>> getUserLatestEvents(Authentication authentication);
+
     /**
      * Retrieve a map with service IDs as keys and list of float event values for each service.
      *
@@ -74,5 +82,32 @@ public interface EventService extends ResourceService<Event, Authentication> {
      */
     Map<String, List<Float>> getAllServiceEventValues(String eventType, Authentication authentication);
 
-    void deleteEvents(List<Event> events);
+    /**
+     * Delete the given events, in batches.
+     *
+     * @param events
+     * @return the number of deleted events.
+     */
+    int deleteEvents(List<Event> events);
+
+    /**
+     * Delete all the events of the user, in batches.
+     *
+     * @param authentication
+     * @return the number of deleted events.
+     */
+    int deleteUserEvents(Authentication authentication);
+
+    /**
+     * Delete the events that are outside the retention window and have been superseded by a later event
+     * of the same user, service and type.
+     */
+    void compactEvents();
+
+    /**
+     * Get the progress of the running (or the last) event compaction.
+     *
+     * @return
+     */
+    Map<String, Object> getCompactionStatus();
 }
@@ -5,6 +5,7 @@ import eu.einfracentral.domain.InfraService;
 import eu.einfracentral.domain.RichService;
 import eu.einfracentral.domain.Service;
 import eu.einfracentral.domain.ServiceHistory;
+import eu.einfracentral.domain.ServiceHistoryDiff;
 import eu.openminted.registry.core.domain.FacetFilter;
 import eu.openminted.registry.core.domain.Paging;
 import eu.openminted.registry.core.domain.Resource;
@@ -13,6 +14,7 @@ import eu.openminted.registry.core.service.SearchService;
 import eu.openminted.registry.core.service.TransformerCRUDService;
 import org.springframework.security.core.Authentication;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -129,6 +131,14 @@ public interface InfraServiceService<T, R> extends TransformerCRUDService<T, R,
      */
     Service getVersionHistory(String serviceId, String versionId);
 
+    /**
+     * Get the field-level changes between consecutive entries of the History of the InfraService with the specified id.
+     *
+     * @param id
+     * @return
+     */
+    Paging<ServiceHistoryDiff> getHistoryDiff(String id);
+
     /**
      * Get inactive Services.
      *
@@ -177,6 +187,29 @@ public interface InfraServiceService<T, R> extends TransformerCRUDService<T, R,
      */
     InfraService publish(String serviceId, String version, boolean active, Authentication auth);
 
+    /**
+     * Iterates over all the Services matching the filter, in pages of the given size.
+     * The filter's from/quantity are ignored.
+     *
+     * @param ff
+     * @param pageSize
+     * @return
+     */
+    Iterator<List<T>> cursor(FacetFilter ff, int pageSize);
+
+    /**
+     * Returns all the Services matching the filter, retrieved page by page (the filter's from/quantity are ignored).
+     *
+     * @param ff
+     * @return
+     */
+    List<T> getAllResults(FacetFilter ff);
+
+    /**
+     * Rewrites, in the background, the stored Service payloads that are not in the configured core format.
+     */
+    void migrateCoreFormat();
+
 //
 //    /**
 //     * Migrates Service's fields for Catris.
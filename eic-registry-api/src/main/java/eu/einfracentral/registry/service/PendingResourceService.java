@@ -90,10 +90,7 @@ public interface PendingResourceService<T extends Bundle> extends ResourceServic
      * @return
      */
     default Map<String, String> getIdOriginalIdMap() {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        return this.getAll(ff, null)
-                .getResults()
+        return this.getAllResults(new FacetFilter())
                 .stream()
                 .collect(Collectors.toMap(Bundle::getId, r -> r.getMetadata().getOriginalId()));
     }
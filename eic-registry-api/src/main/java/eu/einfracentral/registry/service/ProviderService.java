@@ -3,9 +3,11 @@ package eu.einfracentral.registry.service;
 import eu.einfracentral.domain.InfraService;
 import eu.einfracentral.domain.Provider;
 import eu.einfracentral.domain.Service;
+import eu.einfracentral.dto.ProviderInfo;
 import org.springframework.security.core.Authentication;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ProviderService<T, U extends Authentication> extends ResourceService<T, Authentication> {
 
@@ -53,4 +55,12 @@ public interface ProviderService<T, U extends Authentication> extends ResourceSe
 
 
     void deleteUserInfo(Authentication authentication);
+
+
+    /**
+     * Get the id, name and acronym of all providers.
+     *
+     * @return a map of provider id to {@link ProviderInfo}
+     */
+    Map<String, ProviderInfo> getProviderInfoMap();
 }
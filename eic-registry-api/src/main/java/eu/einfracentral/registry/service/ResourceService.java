@@ -1,9 +1,12 @@
 package eu.einfracentral.registry.service;
 
+import eu.openminted.registry.core.domain.FacetFilter;
 import eu.openminted.registry.core.domain.Resource;
 import eu.openminted.registry.core.service.ResourceCRUDService;
 import org.springframework.security.core.Authentication;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +37,23 @@ ResourceService<T, U extends Authentication> extends ResourceCRUDService<T, U> {
      */
     List<T> delAll();
 
+    /**
+     * Deletes all the resources matching the filter. Their ids are streamed page by page and every page is
+     * deleted in parallel, the resources are not deserialized.
+     *
+     * @param ff
+     * @return the number of deleted resources.
+     */
+    int deleteByFilter(FacetFilter ff);
+
+    /**
+     * Deletes the resources with the given ids, in parallel batches. Ids that do not exist are ignored.
+     *
+     * @param ids
+     * @return the number of deleted resources.
+     */
+    int deleteByIds(Collection<String> ids);
+
     /**
      * @param t
      * @return
@@ -45,4 +65,27 @@ ResourceService<T, U extends Authentication> extends ResourceCRUDService<T, U> {
      * @return
      */
     Resource getResource(String id);
+
+    /**
+     * Iterates over all the resources matching the filter, in pages of the given size.
+     * The filter's from/quantity are ignored.
+     *
+     * @param ff
+     * @param pageSize
+     * @return
+     */
+    Iterator<List<T>> cursor(FacetFilter ff, int pageSize);
+
+    /**
+     * Returns all the resources matching the filter, retrieved page by page (the filter's from/quantity are ignored).
+     *
+     * @param ff
+     * @return
+     */
+    List<T> getAllResults(FacetFilter ff);
+
+    /**
+     * Rewrites, in the background, the stored payloads that are not in the configured core format.
+     */
+    void migrateCoreFormat();
 }
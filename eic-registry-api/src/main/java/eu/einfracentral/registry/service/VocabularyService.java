@@ -1,6 +1,7 @@
 package eu.einfracentral.registry.service;
 
 import eu.einfracentral.domain.Vocabulary;
+import eu.einfracentral.dto.VocabularyGraph;
 import eu.einfracentral.dto.VocabularyTree;
 import eu.openminted.registry.core.domain.FacetFilter;
 import org.springframework.security.core.Authentication;
@@ -65,4 +66,12 @@ public interface VocabularyService extends ResourceService<Vocabulary, Authentic
     void deleteAll(Authentication auth);
 
     VocabularyTree getVocabulariesTree(Vocabulary.Type type);
+
+    /**
+     * Get all vocabularies and their parent/child relations.
+     * The graph is built once and replaced when vocabularies change.
+     *
+     * @return
+     */
+    VocabularyGraph getVocabularyGraph();
 }
@@ -1,10 +1,18 @@
 package eu.einfracentral.service;
 
+import java.util.Collection;
 import java.util.Map;
 
 public interface Analytics {
 
     Map<String, Integer> getVisitsForLabel(String label, StatisticsService.Interval by);
 
+    /**
+     * Same as {@link #getVisitsForLabel(String, StatisticsService.Interval)} for many labels, in a single request.
+     *
+     * @return the visits of each label.
+     */
+    Map<String, Map<String, Integer>> getVisitsForLabels(Collection<String> labels, StatisticsService.Interval by);
+
     Map<String, Integer> getAllServiceVisits();
 }
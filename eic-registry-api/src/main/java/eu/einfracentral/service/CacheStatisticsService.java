@@ -0,0 +1,13 @@
+package eu.einfracentral.service;
+
+import java.util.Map;
+
+public interface CacheStatisticsService {
+
+    /**
+     * Get the number of hits, misses and entries of each cache.
+     *
+     * @return a map with cache names as keys.
+     */
+    Map<String, Map<String, Number>> getCacheStatistics();
+}
@@ -0,0 +1,234 @@
+package eu.einfracentral.bench;
+
+import eu.einfracentral.domain.*;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Realistically sized objects of the model, with every field populated.
+ */
+public class Fixtures {
+
+    private static final String LOREM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor "
+            + "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco "
+            + "laboris nisi ut aliquip ex ea commodo consequat. ";
+
+    private Fixtures() {
+    }
+
+    public static InfraService infraService() {
+        Service service = new Service();
+        service.setId("provider.service_with_a_long_name");
+        service.setName("Service With A Long Name");
+        service.setUrl(url("https://www.example.org/service"));
+        service.setDescription(repeat(LOREM, 8));
+        service.setLogo(url("https://www.example.org/service/logo.png"));
+        service.setTagline(LOREM);
+        service.setUserValue(repeat(LOREM, 3));
+        service.setUserBaseList(list(10, i -> "user base " + i));
+        service.setUseCases(list(10, i -> "use case " + i + ": " + LOREM));
+        service.setMultimediaUrls(list(5, i -> url("https://www.example.org/service/media/" + i)));
+        service.setOptions(list(3, Fixtures::serviceOption));
+        service.setEndpoint(url("https://api.example.org/service"));
+        service.setRequiredServices(list(5, i -> "provider.required_service_" + i));
+        service.setRelatedServices(list(5, i -> "provider.related_service_" + i));
+        service.setProviders(list(3, i -> "provider_" + i));
+        service.setScientificSubdomains(list(8, i -> "scientific_subdomain-natural_sciences-subdomain_" + i));
+        service.setSubcategories(list(8, i -> "subcategory-sharing_and_discovery-data-subcategory_" + i));
+        service.setTargetUsers(list(6, i -> "target_user-researchers-" + i));
+        service.setLanguages(list(5, i -> "language-" + i));
+        service.setPlaces(list(20, i -> "place-" + i));
+        service.setAccessTypes(list(3, i -> "access_type-" + i));
+        service.setAccessModes(list(3, i -> "access_mode-" + i));
+        service.setFunders(list(4, i -> "funder_" + i));
+        service.setTags(list(15, i -> "tag " + i));
+        service.setPhase("phase-production");
+        service.setTrl("trl-9");
+        service.setVersion("2.1.0");
+        service.setLastUpdate(DATATYPE_FACTORY.newXMLGregorianCalendar("2020-03-15"));
+        service.setChangeLog(repeat(LOREM, 2));
+        service.setCertifications(list(3, i -> "certification " + i));
+        service.setStandards(list(3, i -> "standard " + i));
+        service.setOrderType("order_type-order_required");
+        service.setOrder(url("https://www.example.org/service/order"));
+        service.setSla(url("https://www.example.org/service/sla"));
+        service.setTermsOfUse(url("https://www.example.org/service/terms"));
+        service.setPrivacyPolicy(url("https://www.example.org/service/privacy"));
+        service.setAccessPolicy(url("https://www.example.org/service/access"));
+        service.setPaymentModel(url("https://www.example.org/service/payment"));
+        service.setPricing(url("https://www.example.org/service/pricing"));
+        service.setUserManual(url("https://www.example.org/service/manual"));
+        service.setAdminManual(url("https://www.example.org/service/admin"));
+        service.setTraining(url("https://www.example.org/service/training"));
+        service.setHelpdesk(url("https://www.example.org/service/helpdesk"));
+        service.setMonitoring(url("https://www.example.org/service/monitoring"));
+        service.setMaintenance(url("https://www.example.org/service/maintenance"));
+        service.setContacts(list(3, Fixtures::contact));
+        service.setRelatedPlatforms(list(4, i -> "platform " + i));
+        service.setAggregatedServices(12);
+        service.setPublications(340);
+        service.setDatasets(56);
+        service.setSoftware(7);
+        service.setApplications(3);
+        service.setOtherProducts(1);
+
+        InfraService infraService = new InfraService(service, metadata());
+        infraService.setActive(true);
+        infraService.setStatus("approved");
+        infraService.setLatest(true);
+        return infraService;
+    }
+
+    public static ProviderBundle providerBundle(int users, int locations) {
+        Provider provider = new Provider();
+        provider.setId("provider_with_a_long_name");
+        provider.setName("Provider With A Long Name");
+        provider.setAcronym("PWALN");
+        provider.setWebsite(url("https://www.example.org"));
+        provider.setDescription(repeat(LOREM, 6));
+        provider.setLogo(url("https://www.example.org/logo.png"));
+        provider.setMultimedia(list(5, i -> url("https://www.example.org/media/" + i)));
+        provider.setTypes(list(3, i -> "provider_type-" + i));
+        provider.setCategories(list(5, i -> "provider_category-" + i));
+        provider.setEsfriDomains(list(4, i -> "provider_esfri_domain-" + i));
+        provider.setTags(list(15, i -> "tag " + i));
+        provider.setLifeCycleStatus("provider_life_cycle_status-operational");
+        provider.setLocation(location(0));
+        provider.setCoordinatingCountry("GR");
+        // a provider has a single address, its participating countries are its (many) locations
+        provider.setParticipatingCountries(list(locations, i -> "country_" + i));
+        provider.setContacts(list(5, Fixtures::contact));
+        provider.setHostingLegalEntity("Hosting Legal Entity");
+        provider.setLegalStatus("provider_legal_status-foundation");
+        provider.setEsfri("provider_esfri-landmark");
+        provider.setNetworks(list(4, i -> "provider_network-" + i));
+        provider.setAreasOfActivity(list(3, i -> "provider_area_of_activity-" + i));
+        provider.setSocietalGrandChallenges(list(4, i -> "provider_societal_grand_challenge-" + i));
+        provider.setNationalRoadmap("yes");
+        provider.setUsers(list(users, Fixtures::user));
+
+        ProviderBundle providerBundle = new ProviderBundle();
+        providerBundle.setProvider(provider);
+        providerBundle.setMetadata(metadata());
+        providerBundle.setActive(true);
+        providerBundle.setStatus("approved");
+        return providerBundle;
+    }
+
+    public static Measurement measurement() {
+        Measurement measurement = new Measurement();
+        measurement.setId("measurement_id");
+        measurement.setIndicatorId("indicator_id");
+        RangeValue rangeValue = new RangeValue();
+        rangeValue.setFromValue("10");
+        rangeValue.setToValue("100");
+        measurement.setRangeValue(rangeValue);
+        measurement.setValueIsRange(true);
+        measurement.setTime(DATATYPE_FACTORY.newXMLGregorianCalendar("2020-03-15"));
+        measurement.setLocations(list(10, i -> "place-" + i));
+        measurement.setServiceId("provider.service_with_a_long_name");
+        return measurement;
+    }
+
+    public static Event event() {
+        Event event = new Event();
+        event.setId("4c6a0ca2-1f1c-4ad4-bb36-6c3a3d7b8a5e");
+        event.setInstant(1584273600000L);
+        event.setType(Event.UserActionType.RATING.getKey());
+        event.setUser("0123456789abcdef@example.org");
+        event.setService("provider.service_with_a_long_name");
+        event.setValue("4.5");
+        return event;
+    }
+
+    private static ServiceOption serviceOption(int i) {
+        ServiceOption option = new ServiceOption();
+        option.setName("option " + i);
+        option.setUrl(url("https://www.example.org/service/option/" + i));
+        option.setDescription(LOREM);
+        option.setLogo(url("https://www.example.org/service/option/" + i + "/logo.png"));
+        option.setContacts(list(2, Fixtures::contact));
+        option.setAttributes(list(5, j -> "attribute " + j));
+        return option;
+    }
+
+    private static Contact contact(int i) {
+        Contact contact = new Contact();
+        contact.setFirstName("First" + i);
+        contact.setLastName("Last" + i);
+        contact.setEmail("contact" + i + "@example.org");
+        contact.setTel("+30 210 0000 00" + i);
+        contact.setPosition("position " + i);
+        return contact;
+    }
+
+    private static User user(int i) {
+        User user = new User();
+        user.setId(i + "0123456789abcdef@example.org");
+        user.setEmail("user" + i + "@example.org");
+        user.setName("Name" + i);
+        user.setSurname("Surname" + i);
+        return user;
+    }
+
+    private static ProviderLocation location(int i) {
+        ProviderLocation location = new ProviderLocation();
+        location.setName("location " + i);
+        location.setStreet("Street");
+        location.setNumber(String.valueOf(i));
+        location.setPostalCode("11527");
+        location.setCity("Athens");
+        location.setRegion("Attica");
+        return location;
+    }
+
+    private static Metadata metadata() {
+        Metadata metadata = new Metadata();
+        metadata.setRegisteredBy("Registered By");
+        metadata.setRegisteredAt("1584273600000");
+        metadata.setModifiedBy("Modified By");
+        metadata.setModifiedAt("1584273600000");
+        metadata.setSource("source");
+        metadata.setOriginalId("original_id");
+        return metadata;
+    }
+
+    private static <T> List<T> list(int size, IntFunction<T> element) {
+        List<T> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(element.apply(i));
+        }
+        return list;
+    }
+
+    private static String repeat(String text, int times) {
+        String[] copies = new String[times];
+        Arrays.fill(copies, text);
+        return String.join("", copies);
+    }
+
+    private static URL url(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static final DatatypeFactory DATATYPE_FACTORY;
+
+    static {
+        try {
+            DATATYPE_FACTORY = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
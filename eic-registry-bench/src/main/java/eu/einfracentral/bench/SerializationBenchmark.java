@@ -0,0 +1,169 @@
+package eu.einfracentral.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import eu.einfracentral.domain.Contact;
+import eu.einfracentral.domain.Event;
+import eu.einfracentral.domain.Funder;
+import eu.einfracentral.domain.Indicator;
+import eu.einfracentral.domain.InfraService;
+import eu.einfracentral.domain.Provider;
+import eu.einfracentral.domain.ProviderBundle;
+import eu.einfracentral.domain.ProviderLocation;
+import eu.einfracentral.domain.ProviderRequest;
+import eu.einfracentral.domain.RangeValue;
+import eu.einfracentral.domain.Service;
+import eu.einfracentral.domain.ServiceOption;
+import eu.einfracentral.domain.User;
+import eu.einfracentral.domain.Vocabulary;
+import eu.einfracentral.service.PayloadParser;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of turning the model into resource payloads and back.
+ * <p>
+ * The registry's parser pool is a JAXB marshaller/unmarshaller over the same classes as
+ * {@code ServiceConfig.eicJAXBContext()}, so the JAXB benchmarks are the baseline of every resource read and write.
+ * The Jackson benchmarks use the field based mapper of {@code PayloadParser}/{@code DeserializedObjectCache}
+ * ('json', 'copy') and two candidate replacements ('smile', 'afterburner').
+ * <p>
+ * Run with: {@code java -jar eic-registry-bench/target/benchmarks.jar SerializationBenchmark -prof gc}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"InfraService", "ProviderBundle", "Measurement", "Event"})
+    public String type;
+
+    /**
+     * Number of users of the ProviderBundle fixture.
+     */
+    @Param({"50"})
+    public int users;
+
+    private Class<?> clazz;
+    private Object object;
+
+    private Marshaller marshaller;
+    private Unmarshaller unmarshaller;
+    private ObjectMapper jsonMapper;
+    private ObjectMapper smileMapper;
+    private ObjectMapper afterburnerMapper;
+
+    private String xml;
+    private String json;
+    private byte[] smile;
+
+    @Setup
+    public void setup() throws JAXBException, IOException, DatatypeConfigurationException {
+        switch (type) {
+            case "InfraService":
+                object = Fixtures.infraService();
+                break;
+            case "ProviderBundle":
+                object = Fixtures.providerBundle(users, 20);
+                break;
+            case "Measurement":
+                object = Fixtures.measurement();
+                break;
+            case "Event":
+                object = Fixtures.event();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+        clazz = object.getClass();
+
+        JAXBContext context = JAXBContext.newInstance(Event.class, Funder.class, Provider.class, Service.class,
+                User.class, InfraService.class, Indicator.class, eu.einfracentral.domain.Measurement.class,
+                RangeValue.class, Vocabulary.class, ServiceOption.class, Contact.class, ProviderLocation.class,
+                ProviderRequest.class, ProviderBundle.class);
+        marshaller = context.createMarshaller();
+        unmarshaller = context.createUnmarshaller();
+
+        jsonMapper = PayloadParser.createFieldMapper();
+        smileMapper = PayloadParser.createFieldMapper(new ObjectMapper(new SmileFactory()));
+        afterburnerMapper = PayloadParser.createFieldMapper(new ObjectMapper()).registerModule(new AfterburnerModule());
+
+        xml = jaxbWrite();
+        json = jsonMapper.writeValueAsString(object);
+        smile = smileMapper.writeValueAsBytes(object);
+    }
+
+    @Benchmark
+    public String jaxbWrite() throws JAXBException {
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(object, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public Object jaxbRead() throws JAXBException {
+        return unmarshaller.unmarshal(new StreamSource(new StringReader(xml)), clazz).getValue();
+    }
+
+    @Benchmark
+    public String jsonWrite() throws IOException {
+        return jsonMapper.writeValueAsString(object);
+    }
+
+    @Benchmark
+    public Object jsonRead() throws IOException {
+        return jsonMapper.readValue(json, clazz);
+    }
+
+    @Benchmark
+    public byte[] smileWrite() throws IOException {
+        return smileMapper.writeValueAsBytes(object);
+    }
+
+    @Benchmark
+    public Object smileRead() throws IOException {
+        return smileMapper.readValue(smile, clazz);
+    }
+
+    @Benchmark
+    public String afterburnerWrite() throws IOException {
+        return afterburnerMapper.writeValueAsString(object);
+    }
+
+    @Benchmark
+    public Object afterburnerRead() throws IOException {
+        return afterburnerMapper.readValue(json, clazz);
+    }
+
+    /**
+     * The price of a hit of the deserialized object cache, to compare with 'jaxbRead' and 'jsonRead'.
+     */
+    @Benchmark
+    public Object copy() {
+        return jsonMapper.convertValue(object, clazz);
+    }
+
+    /**
+     * The price of a miss of the deserialized object cache, which unmarshals the payload and caches a copy of it.
+     */
+    @Benchmark
+    public Object jaxbReadAndCopy() throws JAXBException {
+        Object read = unmarshaller.unmarshal(new StreamSource(new StringReader(xml)), clazz).getValue();
+        jsonMapper.convertValue(read, clazz);
+        return read;
+    }
+}
@@ -0,0 +1,81 @@
+package eu.einfracentral.domain;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.ArrayList;
+import java.util.List;
+
+@XmlTransient
+public class ServiceHistoryDiff extends ServiceHistory {
+
+    private String previousCoreVersionId = null;
+
+    private List<FieldChange> changes = new ArrayList<>();
+
+    public ServiceHistoryDiff() {
+    }
+
+    public ServiceHistoryDiff(ServiceHistory serviceHistory, String previousCoreVersionId, List<FieldChange> changes) {
+        super(serviceHistory, serviceHistory.getVersion(), serviceHistory.getCoreVersionId(), serviceHistory.isVersionChange());
+        this.previousCoreVersionId = previousCoreVersionId;
+        this.changes = changes;
+    }
+
+    public String getPreviousCoreVersionId() {
+        return previousCoreVersionId;
+    }
+
+    public void setPreviousCoreVersionId(String previousCoreVersionId) {
+        this.previousCoreVersionId = previousCoreVersionId;
+    }
+
+    public List<FieldChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<FieldChange> changes) {
+        this.changes = changes;
+    }
+
+    @XmlTransient
+    public static class FieldChange {
+
+        private String field;
+
+        private Object oldValue;
+
+        private Object newValue;
+
+        public FieldChange() {
+        }
+
+        public FieldChange(String field, Object oldValue, Object newValue) {
+            this.field = field;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public Object getOldValue() {
+            return oldValue;
+        }
+
+        public void setOldValue(Object oldValue) {
+            this.oldValue = oldValue;
+        }
+
+        public Object getNewValue() {
+            return newValue;
+        }
+
+        public void setNewValue(Object newValue) {
+            this.newValue = newValue;
+        }
+    }
+}
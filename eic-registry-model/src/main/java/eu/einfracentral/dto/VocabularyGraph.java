@@ -0,0 +1,81 @@
+package eu.einfracentral.dto;
+
+import eu.einfracentral.domain.Vocabulary;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.*;
+
+/**
+ * Immutable snapshot of all vocabularies and their parent/child relations.
+ * Vocabularies are stored in an array, relations as indices into it.
+ */
+@XmlTransient
+public final class VocabularyGraph {
+
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private final Vocabulary[] vocabularies;
+    private final Map<String, Integer> index;
+    private final int[] parents;
+    private final int[][] children;
+
+    public VocabularyGraph(Collection<Vocabulary> vocabularies) {
+        this.vocabularies = vocabularies.toArray(new Vocabulary[0]);
+        this.index = new HashMap<>(this.vocabularies.length * 2);
+        for (int i = 0; i < this.vocabularies.length; i++) {
+            index.put(this.vocabularies[i].getId(), i);
+        }
+        this.parents = new int[this.vocabularies.length];
+        Map<Integer, List<Integer>> childLists = new HashMap<>();
+        for (int i = 0; i < this.vocabularies.length; i++) {
+            Integer parent = this.vocabularies[i].getParentId() != null ? index.get(this.vocabularies[i].getParentId()) : null;
+            parents[i] = parent != null ? parent : -1;
+            if (parent != null) {
+                childLists.computeIfAbsent(parent, k -> new ArrayList<>()).add(i);
+            }
+        }
+        this.children = new int[this.vocabularies.length][];
+        for (int i = 0; i < this.vocabularies.length; i++) {
+            List<Integer> childList = childLists.get(i);
+            children[i] = childList != null ? childList.stream().mapToInt(Integer::intValue).toArray() : NO_CHILDREN;
+        }
+    }
+
+    /**
+     * @param id the vocabulary id.
+     * @return the vocabulary, or null if it does not exist.
+     */
+    public Vocabulary get(String id) {
+        Integer i = id != null ? index.get(id) : null;
+        return i != null ? vocabularies[i] : null;
+    }
+
+    /**
+     * @param id the vocabulary id.
+     * @return the parent of the vocabulary, or null if it does not exist or has no parent.
+     */
+    public Vocabulary getParent(String id) {
+        Integer i = id != null ? index.get(id) : null;
+        return i != null && parents[i] >= 0 ? vocabularies[parents[i]] : null;
+    }
+
+    /**
+     * @param id the vocabulary id.
+     * @return the children of the vocabulary.
+     */
+    public List<Vocabulary> getChildren(String id) {
+        Integer i = id != null ? index.get(id) : null;
+        if (i == null) {
+            return Collections.emptyList();
+        }
+        List<Vocabulary> result = new ArrayList<>(children[i].length);
+        for (int child : children[i]) {
+            result.add(vocabularies[child]);
+        }
+        return result;
+    }
+
+    public int size() {
+        return vocabularies.length;
+    }
+}
@@ -0,0 +1,31 @@
+package eu.einfracentral.controllers;
+
+import eu.einfracentral.service.CacheStatisticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("cache")
+public class CacheController {
+
+    private final CacheStatisticsService cacheStatisticsService;
+
+    @Autowired
+    CacheController(CacheStatisticsService cacheStatisticsService) {
+        this.cacheStatisticsService = cacheStatisticsService;
+    }
+
+    // Hits, misses and entries of each cache, since startup.
+    @GetMapping(path = "stats", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Map<String, Number>>> getCacheStatistics() {
+        return ResponseEntity.ok(cacheStatisticsService.getCacheStatistics());
+    }
+}
@@ -6,7 +6,6 @@ import eu.einfracentral.domain.ProviderBundle;
 import eu.einfracentral.registry.service.InfraServiceService;
 import eu.einfracentral.registry.service.ProviderService;
 import eu.openminted.registry.core.domain.FacetFilter;
-import eu.openminted.registry.core.domain.Paging;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.CDL;
@@ -43,10 +42,9 @@ public class CSVController {
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public ResponseEntity<String> servicesToCSV(@ApiIgnore Authentication auth, HttpServletResponse response) {
         FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         ff.addFilter("latest", "true");
-        Paging<InfraService> infraServices = infraService.getAll(ff, auth);
-        String csvData = listToCSV(infraServices.getResults());
+        List<InfraService> infraServices = infraService.getAllResults(ff);
+        String csvData = listToCSV(infraServices);
         response.setHeader("Content-disposition", "attachment; filename=" + "services.csv");
         return ResponseEntity.ok(csvData);
     }
@@ -55,10 +53,8 @@ public class CSVController {
     @GetMapping(path = "providers", produces = {MediaType.APPLICATION_OCTET_STREAM_VALUE})
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public ResponseEntity<String> providersToCSV(@ApiIgnore Authentication auth, HttpServletResponse response) {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        Paging<ProviderBundle> providers = providerService.getAll(ff, auth);
-        String csvData = listToCSV(providers.getResults());
+        List<ProviderBundle> providers = providerService.getAllResults(new FacetFilter());
+        String csvData = listToCSV(providers);
         response.setHeader("Content-disposition", "attachment; filename=" + "providers.csv");
         return ResponseEntity.ok(csvData);
     }
@@ -16,6 +16,7 @@ import springfox.documentation.annotations.ApiIgnore;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("event")
@@ -43,9 +44,8 @@ public class EventController extends ResourceController<Event, Authentication> {
     @DeleteMapping(path = "deleteNull/{type}/", produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> deleteNullEvents(@PathVariable String type) {
         FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         ff.addFilter("type", type);
-        List<Event> events = eventService.getAll(ff, null).getResults();
+        List<Event> events = eventService.getAllResults(ff);
         List<Event> toDelete = new ArrayList<>();
         for (Event event : events) {
             if (event.getValue() == null) {
@@ -53,12 +53,27 @@ public class EventController extends ResourceController<Event, Authentication> {
                 logger.info("Attempting delete of null event: {}", event);
             }
         }
-        int size = toDelete.size();
-        eventService.deleteEvents(toDelete);
         logger.info("Admin deleting null events");
-        return new ResponseEntity<>("deleted " + size, HttpStatus.NO_CONTENT);
+        int deleted = eventService.deleteEvents(toDelete);
+        return new ResponseEntity<>("deleted " + deleted, HttpStatus.NO_CONTENT);
     }
 
+    // Deletes the superseded events outside the retention window in the background.
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(path = "compact", produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Void> compactEvents() {
+        logger.info("Admin compacting events");
+        eventService.compactEvents();
+        return new ResponseEntity<>(HttpStatus.ACCEPTED);
+    }
+
+    // Progress of the running (or the last) event compaction.
+
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @GetMapping(path = "compact", produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Map<String, Object>> getCompactionStatus() {
+        return new ResponseEntity<>(eventService.getCompactionStatus(), HttpStatus.OK);
+    }
 
     // FAVORITES -------->
     // Set a Service as favorite for a user.
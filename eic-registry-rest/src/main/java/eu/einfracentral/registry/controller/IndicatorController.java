@@ -86,10 +86,7 @@ public class IndicatorController extends ResourceController<Indicator, Authentic
     @GetMapping(path = {"unused"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public ResponseEntity<List<String>> unused(@ApiIgnore Authentication auth) {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<String> indicatorIds = indicatorService.getAll(ff, auth)
-                .getResults()
+        List<String> indicatorIds = indicatorService.getAllResults(new FacetFilter())
                 .stream()
                 .map(Indicator::getId)
                 .collect(Collectors.toList());
@@ -55,12 +55,18 @@ public class InfraServiceController {
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
+    // Rewrites the stored Services in the configured core format (xml/json) in the background.
+    @PostMapping(path = "migrateFormat", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Void> migrateCoreFormat(@ApiIgnore Authentication authentication) {
+        infraService.migrateCoreFormat();
+        return new ResponseEntity<>(HttpStatus.ACCEPTED);
+    }
+
     @DeleteMapping(path = "delete/all", produces = {MediaType.APPLICATION_JSON_VALUE})
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public ResponseEntity<InfraService> deleteAll(@ApiIgnore Authentication authentication) throws ResourceNotFoundException {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<InfraService> services = infraService.getAll(ff, null).getResults();
+        List<InfraService> services = infraService.getAllResults(new FacetFilter());
         for (InfraService service : services) {
             logger.info("Deleting service with name: {}", service.getService().getName());
             infraService.delete(service);
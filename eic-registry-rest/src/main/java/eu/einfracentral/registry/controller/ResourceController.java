@@ -13,6 +13,7 @@ import org.apache.logging.log4j.Logger;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import springfox.documentation.annotations.ApiIgnore;
@@ -76,6 +77,14 @@ public class ResourceController<T extends Identifiable, U extends Authentication
         return ret;
     }
 
+    // Rewrites the stored resources in the configured core format (xml/json) in the background.
+    @PostMapping(path = "migrateFormat", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Void> migrateCoreFormat(@ApiIgnore U auth) {
+        service.migrateCoreFormat();
+        return new ResponseEntity<>(HttpStatus.ACCEPTED);
+    }
+
     @ApiOperation(value = "Filter a list of Resources based on a set of filters.")
     @ApiImplicitParams({
             @ApiImplicitParam(name = "query", value = "Keyword to refine the search", dataType = "string", paramType = "query"),
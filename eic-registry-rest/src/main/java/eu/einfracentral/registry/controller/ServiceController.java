@@ -177,7 +177,8 @@ public class ServiceController {
             @ApiImplicitParam(name = "from", value = "Starting index in the result set", dataType = "string", paramType = "query"),
             @ApiImplicitParam(name = "quantity", value = "Quantity to be fetched", dataType = "string", paramType = "query"),
             @ApiImplicitParam(name = "order", value = "asc / desc", dataType = "string", paramType = "query"),
-            @ApiImplicitParam(name = "orderField", value = "Order field", dataType = "string", paramType = "query")
+            @ApiImplicitParam(name = "orderField", value = "Order field", dataType = "string", paramType = "query"),
+            @ApiImplicitParam(name = "searchMode", value = "Keyword search mode: regexp / ngram", dataType = "string", paramType = "query")
     })
     @GetMapping(path = "all", produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<Paging<Service>> getAllServices(@ApiIgnore @RequestParam MultiValueMap<String, Object> allRequestParams, @ApiIgnore Authentication authentication) {
@@ -195,7 +196,8 @@ public class ServiceController {
             @ApiImplicitParam(name = "from", value = "Starting index in the result set", dataType = "string", paramType = "query"),
             @ApiImplicitParam(name = "quantity", value = "Quantity to be fetched", dataType = "string", paramType = "query"),
             @ApiImplicitParam(name = "order", value = "asc / desc", dataType = "string", paramType = "query"),
-            @ApiImplicitParam(name = "orderField", value = "Order field", dataType = "string", paramType = "query")
+            @ApiImplicitParam(name = "orderField", value = "Order field", dataType = "string", paramType = "query"),
+            @ApiImplicitParam(name = "searchMode", value = "Keyword search mode: regexp / ngram", dataType = "string", paramType = "query")
     })
     @GetMapping(path = "/rich/all", produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<Paging<RichService>> getRichServices(@ApiIgnore @RequestParam MultiValueMap<String, Object> allRequestParams, @ApiIgnore Authentication auth) {
@@ -312,6 +314,13 @@ public class ServiceController {
         return ResponseEntity.ok(history);
     }
 
+    // Get the field-level changes between consecutive modifications of a specific Service, providing the Service id.
+    @GetMapping(path = {"history/{id}/diff"}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Paging<ServiceHistoryDiff>> historyDiff(@PathVariable String id, @ApiIgnore Authentication auth) {
+        Paging<ServiceHistoryDiff> diff = infraService.getHistoryDiff(id);
+        return ResponseEntity.ok(diff);
+    }
+
     // Get all modifications of a specific Service, providing the Service id and the resource Version id.
     @GetMapping(path = {"history/{serviceId}/{versionId}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<Service> getVersionHistory(@PathVariable String serviceId, @PathVariable String versionId, @ApiIgnore Authentication auth) {
@@ -48,10 +48,8 @@ public class UserEventsController {
         List<RichService> services = new ArrayList<>();
 
         // Check if the serviceId exists and add it on the list, so to avoid errors
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         List<String> serviceIds = new ArrayList<>();
-        for (InfraService infraService : infraServiceService.getAll(ff, auth).getResults()) {
+        for (InfraService infraService : infraServiceService.getAllResults(new FacetFilter())) {
             serviceIds.add(infraService.getService().getId());
         }
 
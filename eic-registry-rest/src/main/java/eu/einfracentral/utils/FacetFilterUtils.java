@@ -14,6 +14,7 @@ public class FacetFilterUtils {
     public static final String MULTI_FILTER = "multi-filter";
     public static final String SEARCH_FIELDS = "searchFields";
     public static final String SEARCHABLE_AREA = "searchableArea";
+    public static final String SEARCH_MODE = "searchMode";
 
     private static final Logger logger = LogManager.getLogger(FacetFilterUtils.class);
 
@@ -57,6 +58,7 @@ public class FacetFilterUtils {
         if (searchFields == null || searchFields.isEmpty()) {
             searchFields = Collections.singletonList(FacetFilterUtils.SEARCHABLE_AREA);
         }
+        filters.remove(FacetFilterUtils.SEARCH_MODE);
         final List<Object> fields = searchFields;
         StringBuilder query = new StringBuilder();
 
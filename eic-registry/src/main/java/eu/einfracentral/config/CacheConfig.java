@@ -5,7 +5,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,8 +23,10 @@ public class CacheConfig {
     public static final String CACHE_VOCABULARY_TREE = "vocabulary_tree";
     public static final String CACHE_FEATURED = "featuredServices";
     public static final String CACHE_EVENTS = "events";
-    public static final String CACHE_SERVICE_EVENTS = "service_events";
+    public static final String CACHE_USER_EVENTS = "user_events";
     public static final String CACHE_VISITS = "visits";
+    public static final String CACHE_SERVICES_BY = "services_by";
+    public static final String CACHE_PROVIDER_INFO = "provider_info";
 
     @Bean
     public CacheManager cacheManager() {
@@ -33,20 +34,27 @@ public class CacheConfig {
 
         cacheManager.setCaches(Arrays.asList(
 
-                new ConcurrentMapCache(CACHE_VISITS,
+                new CountingConcurrentMapCache(CACHE_VISITS,
                         CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES).maximumSize(2000).build().asMap(), false),
-                new ConcurrentMapCache(CACHE_FEATURED,
+                new CountingConcurrentMapCache(CACHE_FEATURED,
                         CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS).maximumSize(50).build().asMap(), false),
-                new ConcurrentMapCache(CACHE_PROVIDERS),
-                new ConcurrentMapCache(CACHE_EVENTS),
-                new ConcurrentMapCache(CACHE_SERVICE_EVENTS),
-                new ConcurrentMapCache(CACHE_VOCABULARIES),
-                new ConcurrentMapCache(CACHE_VOCABULARY_MAP),
-                new ConcurrentMapCache(CACHE_VOCABULARY_TREE),
+                new CountingConcurrentMapCache(CACHE_SERVICES_BY,
+                        CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES).maximumSize(50).build().asMap(), false),
+                new CountingConcurrentMapCache(CACHE_USER_EVENTS,
+                        CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).maximumSize(1000).build().asMap(), false),
+                // keyed by event type, service and user
+                new CountingConcurrentMapCache(CACHE_EVENTS,
+                        CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES).maximumSize(10000).build().asMap(), false),
+                new CountingConcurrentMapCache(CACHE_PROVIDER_INFO,
+                        CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS).maximumSize(1).build().asMap(), false),
+                new CountingConcurrentMapCache(CACHE_PROVIDERS),
+                new CountingConcurrentMapCache(CACHE_VOCABULARIES),
+                new CountingConcurrentMapCache(CACHE_VOCABULARY_MAP),
+                new CountingConcurrentMapCache(CACHE_VOCABULARY_TREE),
 
                 // NEEDED FOR registry-core
-                new ConcurrentMapCache("resourceTypes"),
-                new ConcurrentMapCache("resourceTypesIndexFields")
+                new CountingConcurrentMapCache("resourceTypes"),
+                new CountingConcurrentMapCache("resourceTypesIndexFields")
         ));
         return cacheManager;
     }
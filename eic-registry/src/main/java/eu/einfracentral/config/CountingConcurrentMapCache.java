@@ -0,0 +1,46 @@
+package eu.einfracentral.config;
+
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ConcurrentMapCache} that counts its hits and misses.
+ */
+public class CountingConcurrentMapCache extends ConcurrentMapCache {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CountingConcurrentMapCache(String name) {
+        super(name);
+    }
+
+    public CountingConcurrentMapCache(String name, ConcurrentMap<Object, Object> store, boolean allowNullValues) {
+        super(name, store, allowNullValues);
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object value = super.lookup(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getSize() {
+        return getNativeCache().size();
+    }
+}
@@ -87,11 +87,9 @@ public class EICAuthoritiesMapper implements OIDCAuthoritiesMapper {
 
     private void mapAuthorities(String admins) {
         userRolesMap = new HashMap<>();
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         try {
-            List<ProviderBundle> providers = providerService.getAll(ff, securityService.getAdminAccess()).getResults();
-            providers.addAll(pendingProviderService.getAll(ff, null).getResults());
+            List<ProviderBundle> providers = providerService.getAllResults(new FacetFilter());
+            providers.addAll(pendingProviderService.getAllResults(new FacetFilter()));
             userRolesMap = providers
                     .stream()
                     .distinct()
@@ -0,0 +1,51 @@
+package eu.einfracentral.manager;
+
+import com.google.common.cache.CacheStats;
+import eu.einfracentral.config.CountingConcurrentMapCache;
+import eu.einfracentral.service.CacheStatisticsService;
+import eu.einfracentral.service.DeserializedObjectCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Component
+public class CacheStatisticsManager implements CacheStatisticsService {
+
+    private final CacheManager cacheManager;
+    private final DeserializedObjectCache deserializedObjectCache;
+
+    @Autowired
+    public CacheStatisticsManager(CacheManager cacheManager, DeserializedObjectCache deserializedObjectCache) {
+        this.cacheManager = cacheManager;
+        this.deserializedObjectCache = deserializedObjectCache;
+    }
+
+    @Override
+    public Map<String, Map<String, Number>> getCacheStatistics() {
+        Map<String, Map<String, Number>> statistics = new TreeMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof CountingConcurrentMapCache) {
+                CountingConcurrentMapCache countingCache = (CountingConcurrentMapCache) cache;
+                statistics.put(name, createStatistics(countingCache.getHits(), countingCache.getMisses(), countingCache.getSize()));
+            }
+        }
+        CacheStats stats = deserializedObjectCache.stats();
+        statistics.put("deserialized_objects", createStatistics(stats.hitCount(), stats.missCount(), deserializedObjectCache.size()));
+        return statistics;
+    }
+
+    private static Map<String, Number> createStatistics(long hits, long misses, long size) {
+        Map<String, Number> statistics = new LinkedHashMap<>();
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        statistics.put("size", size);
+        return statistics;
+    }
+}
@@ -5,224 +5,88 @@ import eu.einfracentral.domain.ProviderBundle;
 import eu.einfracentral.domain.Service;
 import eu.einfracentral.registry.service.ProviderService;
 import eu.einfracentral.service.AnalyticsService;
+import eu.einfracentral.service.EventRollups;
+import eu.einfracentral.service.PayloadParser;
+import eu.einfracentral.service.SearchServiceEIC;
 import eu.einfracentral.service.StatisticsService;
-import eu.openminted.registry.core.configuration.ElasticConfiguration;
-import eu.openminted.registry.core.domain.Paging;
-import eu.openminted.registry.core.domain.Resource;
-import eu.openminted.registry.core.service.ParserService;
-import eu.openminted.registry.core.service.SearchService;
-import eu.openminted.registry.core.service.ServiceException;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchType;
-import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.search.aggregations.AggregationBuilders;
-import org.elasticsearch.search.aggregations.PipelineAggregatorBuilders;
-import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
-import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
-import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
-import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
-import org.elasticsearch.search.aggregations.bucket.histogram.ParsedDateHistogram;
-import org.elasticsearch.search.aggregations.bucket.terms.Terms;
-import org.elasticsearch.search.aggregations.pipeline.SimpleValue;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static eu.einfracentral.config.CacheConfig.CACHE_VISITS;
-
 @Component
 @EnableScheduling
 public class StatisticsManager implements StatisticsService {
 
     private static final Logger logger = LogManager.getLogger(StatisticsManager.class);
-    private ElasticConfiguration elastic;
     private AnalyticsService analyticsService;
     private ProviderService<ProviderBundle, Authentication> providerService;
-    private SearchService searchService;
-    private ParserService parserService;
+    private SearchServiceEIC searchService;
+    private PayloadParser payloadParser;
+    private EventRollups eventRollups;
 
     @Autowired
-    StatisticsManager(ElasticConfiguration elastic, AnalyticsService analyticsService,
+    StatisticsManager(AnalyticsService analyticsService,
                       ProviderService<ProviderBundle, Authentication> providerService,
-                      SearchService searchService, ParserService parserService) {
-        this.elastic = elastic;
+                      SearchServiceEIC searchService, PayloadParser payloadParser, EventRollups eventRollups) {
         this.analyticsService = analyticsService;
         this.providerService = providerService;
         this.searchService = searchService;
-        this.parserService = parserService;
+        this.payloadParser = payloadParser;
+        this.eventRollups = eventRollups;
     }
 
     @Override
     public Map<String, Float> ratings(String id, Interval by) {
-
-        String dateFormat;
-        String aggregationName;
-        DateHistogramInterval dateHistogramInterval;
-
-        switch (StatisticsService.Interval.fromString(by.getKey())) {
-            case DAY:
-                dateFormat = "yyyy-MM-dd";
-                aggregationName = "day";
-                dateHistogramInterval = DateHistogramInterval.DAY;
-                break;
-            case WEEK:
-                dateFormat = "yyyy-MM-dd";
-                aggregationName = "week";
-                dateHistogramInterval = DateHistogramInterval.WEEK;
-                break;
-            case YEAR:
-                dateFormat = "yyyy";
-                aggregationName = "year";
-                dateHistogramInterval = DateHistogramInterval.YEAR;
-                break;
-            default:
-                dateFormat = "yyyy-MM";
-                aggregationName = "month";
-                dateHistogramInterval = DateHistogramInterval.MONTH;
-        }
-
-        DateHistogramAggregationBuilder dateHistogramAggregationBuilder = AggregationBuilders.dateHistogram(aggregationName)
-                .field("instant")
-                .calendarInterval(dateHistogramInterval)
-                .format(dateFormat)
-                .subAggregation(AggregationBuilders.sum("rating").field("value"))
-                .subAggregation(AggregationBuilders.count("rating_count").field("value"))
-                .subAggregation(PipelineAggregatorBuilders.cumulativeSum("cum_sum", "rating"))
-                .subAggregation(PipelineAggregatorBuilders.cumulativeSum("ratings_num", "rating_count"));
-
-        SearchRequest search = new SearchRequest("event");
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        search.searchType(SearchType.DFS_QUERY_THEN_FETCH);
-        searchSourceBuilder.query(getEventQueryBuilder(id, Event.UserActionType.RATING.getKey()));
-        searchSourceBuilder.aggregation(dateHistogramAggregationBuilder);
-        search.source(searchSourceBuilder);
-
-        SearchResponse response = null;
-        try {
-            response = elastic.client().search(search, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            throw new ServiceException(e.getMessage());
-        }
-
-        List<? extends Histogram.Bucket> bucketsDay = ((ParsedDateHistogram) response
-                .getAggregations()
-                .get(aggregationName))
-                .getBuckets();
-
-        Map<String, Float> bucketMap = bucketsDay.stream().collect(Collectors.toMap(
-                MultiBucketsAggregation.Bucket::getKeyAsString,
-                e -> Float.parseFloat(((SimpleValue) e.getAggregations().get("cum_sum")).getValueAsString()) / Float.parseFloat(((SimpleValue) e.getAggregations().get("ratings_num")).getValueAsString())
-        ));
-
-        return new TreeMap<>(bucketMap);
+        return ratings(eventRollups.getBuckets(Event.UserActionType.RATING.getKey(), id, by));
     }
 
     @Override
     public Map<String, Integer> favourites(String id, Interval by) {
-        final long[] totalDocCounts = new long[2]; //0 - false documents, ie unfavourites, 1 - true documents, ie favourites
-        List<? extends Histogram.Bucket> buckets = histogram(id, Event.UserActionType.FAVOURITE.getKey(), by).getBuckets();
-        return new TreeMap<>(buckets.stream().collect(
-                Collectors.toMap(
-                        MultiBucketsAggregation.Bucket::getKeyAsString,
-                        bucket -> {
-                            Terms subTerm = bucket.getAggregations().get("value");
-                            if (subTerm.getBuckets() != null) {
-                                totalDocCounts[0] += subTerm.getBuckets().stream().mapToLong(
-                                        subBucket -> subBucket.getKeyAsNumber().intValue() == 0 ? subBucket.getDocCount() : 0
-                                ).sum();
-                                totalDocCounts[1] += subTerm.getBuckets().stream().mapToLong(
-                                        subBucket -> subBucket.getKeyAsNumber().intValue() == 1 ? subBucket.getDocCount() : 0
-                                ).sum();
-                            }
-//                            logger.warn(String.format("Favs: %s - Unfavs: %s", totalDocCounts[1], totalDocCounts[0]));
-                            return (int) Math.max(totalDocCounts[1] - totalDocCounts[0], 0);
-                        }
-                )
-        ));
+        return favourites(eventRollups.getBuckets(Event.UserActionType.FAVOURITE.getKey(), id, by));
     }
 
-    private ParsedDateHistogram histogram(String id, String eventType, Interval by) {
-
-        String dateFormat;
-        String aggregationName;
-        DateHistogramInterval dateHistogramInterval;
-
-        switch (StatisticsService.Interval.fromString(by.getKey())) {
-            case DAY:
-                dateFormat = "yyyy-MM-dd";
-                aggregationName = "day";
-                dateHistogramInterval = DateHistogramInterval.DAY;
-                break;
-            case WEEK:
-                dateFormat = "yyyy-MM-dd";
-                aggregationName = "week";
-                dateHistogramInterval = DateHistogramInterval.WEEK;
-                break;
-            case YEAR:
-                dateFormat = "yyyy";
-                aggregationName = "year";
-                dateHistogramInterval = DateHistogramInterval.YEAR;
-                break;
-            default:
-                dateFormat = "yyyy-MM";
-                aggregationName = "month";
-                dateHistogramInterval = DateHistogramInterval.MONTH;
+    // running average of all the ratings until the end of each bucket
+    private static Map<String, Float> ratings(SortedMap<String, double[]> buckets) {
+        Map<String, Float> ratings = new TreeMap<>();
+        double count = 0;
+        double sum = 0;
+        for (Map.Entry<String, double[]> bucket : buckets.entrySet()) {
+            count += bucket.getValue()[0];
+            sum += bucket.getValue()[1];
+            ratings.put(bucket.getKey(), (float) (sum / count));
         }
-
-        DateHistogramAggregationBuilder dateHistogramAggregationBuilder = AggregationBuilders
-                .dateHistogram(aggregationName)
-                .field("instant")
-                .calendarInterval(dateHistogramInterval)
-                .format(dateFormat)
-                .subAggregation(AggregationBuilders.terms("value").field("value"));
-
-        SearchRequest search = new SearchRequest("event");
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        search.searchType(SearchType.DEFAULT);
-        searchSourceBuilder.query(getEventQueryBuilder(id, eventType));
-        searchSourceBuilder.aggregation(dateHistogramAggregationBuilder);
-        search.source(searchSourceBuilder);
-
-        SearchResponse response = null;
-        try {
-            response = elastic.client().search(search, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            throw new ServiceException(e.getMessage());
-        }
-
-        return response
-                .getAggregations()
-                .get(aggregationName);
+        return ratings;
     }
 
-    private QueryBuilder getEventQueryBuilder(String serviceId, String eventType) {
-        Date date = new Date();
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(0);
-        return QueryBuilders.boolQuery()
-                .filter(QueryBuilders.termsQuery("service", serviceId))
-                .filter(QueryBuilders.rangeQuery("instant").from(c.getTime().getTime()).to(date.getTime()))
-                .filter(QueryBuilders.termsQuery("type", eventType));
+    // favourites minus unfavourites until the end of each bucket
+    private static Map<String, Integer> favourites(SortedMap<String, double[]> buckets) {
+        Map<String, Integer> favourites = new TreeMap<>();
+        long favs = 0;
+        long unfavs = 0;
+        for (Map.Entry<String, double[]> bucket : buckets.entrySet()) {
+            favs += (long) bucket.getValue()[1];
+            unfavs += (long) (bucket.getValue()[0] - bucket.getValue()[1]);
+            favourites.put(bucket.getKey(), (int) Math.max(favs - unfavs, 0));
+        }
+        return favourites;
     }
 
     @Override
     public Map<String, Float> providerRatings(String id, Interval by) {
-        Map<String, Float> providerRatings = providerService.getServices(id)
+        List<String> serviceIds = providerService.getServices(id).stream().map(Service::getId).collect(Collectors.toList());
+        Map<String, Float> providerRatings = eventRollups.getBuckets(Event.UserActionType.RATING.getKey(), serviceIds, by)
+                .values()
                 .stream()
-                .flatMap(s -> ratings(s.getId(), by).entrySet().stream())
+                .flatMap(buckets -> ratings(buckets).entrySet().stream())
                 .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.averagingDouble(e -> (double) e.getValue())))
                 .entrySet()
                 .stream()
@@ -237,16 +101,17 @@ public class StatisticsManager implements StatisticsService {
 
     @Override
     public Map<String, Integer> providerFavourites(String id, Interval by) {
-        Map<String, Integer> providerFavorites = providerService.getServices(id)
+        List<String> serviceIds = providerService.getServices(id).stream().map(Service::getId).collect(Collectors.toList());
+        Map<String, Integer> providerFavorites = eventRollups.getBuckets(Event.UserActionType.FAVOURITE.getKey(), serviceIds, by)
+                .values()
                 .stream()
-                .flatMap(s -> favourites(s.getId(), by).entrySet().stream())
+                .flatMap(buckets -> favourites(buckets).entrySet().stream())
                 .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.summingInt(Map.Entry::getValue)));
 
         return new TreeMap<>(providerFavorites);
     }
 
     @Override
-    @Cacheable(cacheNames = CACHE_VISITS, key = "#id+#by.getKey()")
     public Map<String, Integer> visits(String id, Interval by) {
         try {
             return analyticsService.getVisitsForLabel("/service/" + id, by);
@@ -258,9 +123,10 @@ public class StatisticsManager implements StatisticsService {
 
     @Override
     public Map<String, Integer> providerVisits(String id, Interval by) {
-        Map<String, Integer> results = providerService.getServices(id)
+        Map<String, Integer> results = getServiceVisits(providerService.getServices(id), by)
+                .values()
                 .stream()
-                .flatMap(s -> visits(s.getId(), by).entrySet().stream())
+                .flatMap(visits -> visits.entrySet().stream())
                 .collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.summingInt(Map.Entry::getValue)));
 
         Map<String, Integer> sortedResults = new TreeMap<>(results);
@@ -269,69 +135,67 @@ public class StatisticsManager implements StatisticsService {
 
     @Override
     public Map<String, Float> providerVisitation(String id, Interval by) {
-        Map<String, Integer> counts = providerService.getServices(id).stream().collect(Collectors.toMap(
+        List<Service> services = providerService.getServices(id);
+        Map<String, Map<String, Integer>> serviceVisits = getServiceVisits(services, by);
+        Map<String, Integer> counts = services.stream().collect(Collectors.toMap(
                 Service::getName,
-                s -> visits(s.getId(), by).values().stream().mapToInt(Integer::intValue).sum()
+                s -> serviceVisits.getOrDefault(s.getId(), Collections.emptyMap()).values().stream().mapToInt(Integer::intValue).sum()
         ));
         int grandTotal = counts.values().stream().mapToInt(Integer::intValue).sum();
         return counts.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, v -> ((float) v.getValue()) / grandTotal));
     }
 
-    public Map<DateTime, Map<String, Long>> events(Event.UserActionType type, Date from, Date to, Interval by) {
-        Map<DateTime, Map<String, Long>> results = new LinkedHashMap<>();
-        Paging<Resource> resources = searchService.cqlQuery(
-                String.format("type=\"%s\" AND creation_date > %s AND creation_date < %s",
-                        type, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli()), "event",
-                10000, 0, "creation_date", "ASC");
-        List<Event> events = resources
-                .getResults()
-                .stream()
-                .map(resource -> parserService.deserialize(resource, Event.class))
-                .collect(Collectors.toList());
-
+    // the visits of each service, with a single analytics request
+    private Map<String, Map<String, Integer>> getServiceVisits(List<Service> services, Interval by) {
+        Map<String, Map<String, Integer>> serviceVisits = new HashMap<>();
+        try {
+            Map<String, Map<String, Integer>> labelVisits = analyticsService.getVisitsForLabels(
+                    services.stream().map(s -> "/service/" + s.getId()).collect(Collectors.toList()), by);
+            for (Service service : services) {
+                serviceVisits.put(service.getId(), labelVisits.getOrDefault("/service/" + service.getId(), new HashMap<>()));
+            }
+        } catch (Exception e) {
+            logger.error("Could not find Matomo analytics", e);
+        }
+        return serviceVisits;
+    }
 
+    public Map<DateTime, Map<String, Long>> events(Event.UserActionType type, Date from, Date to, Interval by) {
+        // interval start -> service -> number of events, events are counted in a single pass over a cursor
+        TreeMap<Long, Map<String, Long>> buckets = new TreeMap<>();
         DateTime start = new DateTime(from);
         DateTime stop = new DateTime(to);
-
-        Map<DateTime, List<Event>> eventsByDate = new LinkedHashMap<>();
-
-        start.plusWeeks(1);
+        DateTime end = start;
         while (start.getMillis() <= stop.getMillis()) {
-            DateTime endDate = addInterval(start, by);
-            List<Event> weekEvents = new LinkedList<>();
-
-            events = events
-                    .stream()
-                    .map(event -> {
-                        if (endDate.isAfter(event.getInstant())) {
-                            weekEvents.add(event);
-                            return null;
-                        } else
-                            return event;
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-//            weekEvents.sort(Comparator.comparing(Event::getService));
-            eventsByDate.put(start, weekEvents);
-            start = endDate;
+            buckets.put(start.getMillis(), new TreeMap<>());
+            end = addInterval(start, by);
+            start = end;
         }
-
-        for (Map.Entry<DateTime, List<Event>> weekEntry : eventsByDate.entrySet()) {
-            Map<String, Long> weekResults = weekEntry.getValue()
-                    .stream()
-                    .collect(Collectors.groupingBy(Event::getService, Collectors.counting()));
-
-            weekResults = weekResults.entrySet().stream()
-                    .sorted(Map.Entry.comparingByKey())
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-                            (oldValue, newValue) -> oldValue, LinkedHashMap::new));
-
-            results.put(weekEntry.getKey(), weekResults);
+        if (buckets.isEmpty()) {
+            return new LinkedHashMap<>();
         }
 
+        QueryBuilder query = QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery("type", type.getKey()))
+                .filter(QueryBuilders.rangeQuery("creation_date").gt(from.getTime()).lt(to.getTime()));
+        Iterator<List<Event>> cursor = searchService.cursor("event", query, resource -> payloadParser.deserialize(resource, Event.class));
+        while (cursor.hasNext()) {
+            for (Event event : cursor.next()) {
+                if (event == null || event.getService() == null || event.getInstant() >= end.getMillis()) {
+                    continue;
+                }
+                // events before the first interval are counted in it
+                Map.Entry<Long, Map<String, Long>> bucket = buckets.floorEntry(event.getInstant());
+                Map<String, Long> services = bucket != null ? bucket.getValue() : buckets.firstEntry().getValue();
+                services.merge(event.getService(), 1L, Long::sum);
+            }
+        }
 
+        Map<DateTime, Map<String, Long>> results = new LinkedHashMap<>();
+        for (Map.Entry<Long, Map<String, Long>> bucket : buckets.entrySet()) {
+            results.put(new DateTime(bucket.getKey()), new LinkedHashMap<>(bucket.getValue()));
+        }
         return results;
-
     }
 
     private DateTime addInterval(DateTime date, Interval by) {
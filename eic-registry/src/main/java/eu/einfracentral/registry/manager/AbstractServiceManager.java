@@ -1,16 +1,25 @@
 package eu.einfracentral.registry.manager;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import eu.einfracentral.domain.*;
 import eu.einfracentral.dto.Category;
 import eu.einfracentral.dto.ProviderInfo;
 import eu.einfracentral.dto.ScientificDomain;
+import eu.einfracentral.dto.VocabularyGraph;
 import eu.einfracentral.exception.OIDCAuthenticationException;
 import eu.einfracentral.exception.ResourceException;
 import eu.einfracentral.exception.ResourceNotFoundException;
 import eu.einfracentral.exception.ValidationException;
 import eu.einfracentral.registry.service.*;
 import eu.einfracentral.service.AnalyticsService;
+import eu.einfracentral.service.CoreFormatMigrator;
+import eu.einfracentral.service.DeserializedObjectCache;
+import eu.einfracentral.service.PayloadParser;
+import eu.einfracentral.service.RichServiceStore;
 import eu.einfracentral.service.IdCreator;
+import eu.einfracentral.service.LatestServiceIndex;
+import eu.einfracentral.service.ServiceEventAggregates;
 import eu.einfracentral.service.SearchServiceEIC;
 import eu.einfracentral.service.SynchronizerService;
 import eu.einfracentral.utils.FacetFilterUtils;
@@ -21,22 +30,32 @@ import eu.openminted.registry.core.domain.index.IndexField;
 import eu.openminted.registry.core.service.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 
 import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotNull;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.net.UnknownHostException;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static eu.einfracentral.config.CacheConfig.*;
 import static java.util.stream.Collectors.toList;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.existsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
 public abstract class AbstractServiceManager extends AbstractGenericService<InfraService> implements InfraServiceService<InfraService, InfraService> {
 
@@ -74,6 +93,39 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     @Autowired
     private SearchServiceEIC searchServiceEIC;
 
+    @Autowired
+    private DeserializedObjectCache deserializedObjectCache;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private PayloadParser payloadParser;
+
+    @Autowired
+    private CoreFormatMigrator coreFormatMigrator;
+
+    @Autowired
+    private LatestServiceIndex latestServiceIndex;
+
+    @Autowired
+    private ServiceEventAggregates serviceEventAggregates;
+
+    @Autowired
+    private RichServiceStore richServiceStore;
+
+    private final Cache<String, List<ServiceHistory>> resourceHistoryCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+    private final Cache<String, List<ServiceHistoryDiff>> historyDiffCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+    // core version id -> id of its resource, versions never move to another resource
+    private final Cache<String, String> versionResourceCache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .build();
+    private final Map<String, Function<InfraService, Object>> fieldAccessors = new ConcurrentHashMap<>();
+
     @Autowired
     private IdCreator idCreator;
 
@@ -161,7 +213,7 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService add(InfraService infraService, Authentication auth) {
         logger.trace("User '{}' is attempting to add a new Service: {}", auth, infraService);
         if (infraService.getService().getId() == null) {
@@ -178,17 +230,18 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
 
         prettifyServiceTextFields(infraService, ",");
 
-        String serialized;
-        serialized = parserPool.serialize(infraService, ParserService.ParserServiceTypes.XML);
         Resource created = new Resource();
-        created.setPayload(serialized);
+        created.setPayload(serialize(infraService));
         created.setResourceType(resourceType);
         resourceService.addResource(created);
+        if (infraService.isLatest()) {
+            latestServiceIndex.put(infraService.getService().getId(), created);
+        }
         return infraService;
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService update(InfraService infraService, Authentication auth) {
         logger.trace("User '{}' is attempting to update the Service: {}", auth, infraService);
         // if service version is empty set it null
@@ -207,68 +260,130 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
         existing.setPayload(serialize(infraService));
         existing.setResourceType(resourceType);
         resourceService.updateResource(existing);
+        if (infraService.isLatest()) {
+            latestServiceIndex.put(infraService.getService().getId(), existing);
+        } else {
+            latestServiceIndex.remove(infraService.getService().getId(), existing.getId());
+        }
         return infraService;
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public void delete(InfraService infraService) {
         logger.trace("User is attempting to delete the Service: {}", infraService);
         if (infraService == null || infraService.getService().getId() == null) {
             throw new ServiceException("You cannot delete a null service or service with null id field");
         }
         synchronizerService.syncDelete(infraService);
-        resourceService.deleteResource(getResource(infraService.getService().getId(), infraService.getService().getVersion()).getId());
+        Resource resource = getResource(infraService.getService().getId(), infraService.getService().getVersion());
+        resourceService.deleteResource(resource.getId());
+        latestServiceIndex.remove(infraService.getService().getId(), resource.getId());
     }
 
+    /**
+     * Groups the services by the value of the field. The grouping is cached in CACHE_SERVICES_BY, and callers get
+     * copies of its services, since they may modify them.
+     */
     @Override
     public Map<String, List<InfraService>> getBy(String field) throws NoSuchFieldException {
-        Field serviceField = null;
+        Function<InfraService, Object> getter = getFieldAccessor(field);
+        Map<String, List<InfraService>> cached = cacheManager.getCache(CACHE_SERVICES_BY)
+                .get(getResourceType() + ":" + field, () -> groupServices(getter));
+        Map<String, List<InfraService>> services = new HashMap<>();
+        for (Map.Entry<String, List<InfraService>> entry : cached.entrySet()) {
+            services.put(entry.getKey(), entry.getValue()
+                    .stream()
+                    .map(service -> deserializedObjectCache.copy(service, InfraService.class))
+                    .filter(Objects::nonNull)
+                    .collect(toList()));
+        }
+        return services;
+    }
+
+    private Map<String, List<InfraService>> groupServices(Function<InfraService, Object> getter) {
+        final String undef = "undefined";
+        Map<String, List<InfraService>> services = new HashMap<>();
+        FacetFilter ff = new FacetFilter();
+        ff.setResourceType(getResourceType());
+        Iterator<List<InfraService>> pages = searchServiceEIC.cursor(ff, this::deserialize);
+        while (pages.hasNext()) {
+            for (InfraService service : pages.next()) {
+                Object value = getter.apply(service);
+                services.computeIfAbsent(value != null ? value.toString() : undef, k -> new ArrayList<>()).add(service);
+            }
+        }
+        return services;
+    }
+
+    /**
+     * Returns a getter of the field of {@link Service} (or {@link InfraService}) with the given name.
+     * Getters are resolved once per field.
+     */
+    private Function<InfraService, Object> getFieldAccessor(String field) throws NoSuchFieldException {
+        Function<InfraService, Object> getter = fieldAccessors.get(field);
+        if (getter != null) {
+            return getter;
+        }
         try {
-            serviceField = Service.class.getDeclaredField(field);
+            MethodHandle handle = unreflectGetter(Service.class.getDeclaredField(field));
+            getter = service -> invokeGetter(handle, service.getService());
         } catch (NoSuchFieldException e) {
             logger.warn("Attempt to find field '{}' in Service failed. Trying in InfraService...", field);
-            serviceField = InfraService.class.getDeclaredField(field);
+            MethodHandle handle = unreflectGetter(InfraService.class.getDeclaredField(field));
+            getter = service -> invokeGetter(handle, service);
         }
-        serviceField.setAccessible(true);
+        fieldAccessors.putIfAbsent(field, getter);
+        return getter;
+    }
 
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        Browsing<InfraService> services = getAll(ff, null);
+    private static MethodHandle unreflectGetter(Field field) {
+        field.setAccessible(true);
+        try {
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
 
-        final Field f = serviceField;
-        final String undef = "undefined";
-        return services.getResults().stream().collect(Collectors.groupingBy(service -> {
-            try {
-                return f.get(service.getService()) != null ? f.get(service.getService()).toString() : undef;
-            } catch (IllegalAccessException | IllegalArgumentException e) {
-                logger.warn("Warning", e);
-                try {
-                    return f.get(service) != null ? f.get(service).toString() : undef;
-                } catch (IllegalAccessException e1) {
-                    logger.error("ERROR", e1);
-                }
-                return undef;
-            }
-        }, Collectors.mapping((InfraService service) -> service, toList())));
+    private static Object invokeGetter(MethodHandle getter, Object object) {
+        try {
+            return getter.invoke(object);
+        } catch (Throwable e) {
+            logger.warn("Could not read field", e);
+            return null;
+        }
     }
 
     @Override
     public List<RichService> getByIds(Authentication auth, String... ids) {
-        List<RichService> services;
-        services = Arrays.stream(ids)
-                .map(id ->
-                {
-                    try {
-                        return getRichService(id, "latest", auth);
-                    } catch (ServiceException | ResourceNotFoundException e) {
-                        return null;
-                    }
-
-                })
+        Map<String, InfraService> services = new HashMap<>();
+        List<String> notIndexed = new ArrayList<>();
+        Map<String, Resource> indexed = latestServiceIndex.get(getResourceType(), Arrays.asList(ids));
+        for (String id : ids) {
+            Resource resource = indexed.get(id);
+            InfraService infraService = resource != null ? deserialize(resource) : null;
+            if (infraService != null) {
+                services.put(id, infraService);
+            } else {
+                notIndexed.add(id);
+            }
+        }
+        if (!notIndexed.isEmpty()) {
+            for (Resource resource : searchServiceEIC.searchByValues(getResourceType(), "infra_service_id",
+                    notIndexed, termQuery("latest", true))) {
+                InfraService infraService = deserialize(resource);
+                if (infraService != null) {
+                    services.putIfAbsent(infraService.getService().getId(), infraService);
+                    latestServiceIndex.putIfAbsent(infraService.getService().getId(), resource);
+                }
+            }
+        }
+        List<InfraService> infraServices = Arrays.stream(ids)
+                .map(services::get)
                 .filter(Objects::nonNull)
                 .collect(toList());
-        return services;
+        return createRichServices(infraServices, auth);
     }
 
     @Override
@@ -290,50 +405,16 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
         // get all resources with the specified Service id
         List<Resource> resources = getResourcesWithServiceId(serviceId);
 
-        // for each resource (InfraService), get its versions
+        // for each resource (InfraService), get its history entries
         if (resources != null) {
             for (Resource resource : resources) {
-                InfraService service;
-                Resource tempResource = resource;
-                List<Version> versions = versionService.getVersionsByResource(resource.getId());
-                versions.sort((version, t1) -> {
-                    if (version.getCreationDate().getTime() < t1.getCreationDate().getTime()) {
-                        return -1;
-                    }
-                    return 1;
-                });
-
-                // create the Major Change entry (when service version has changed)
-                if (!versions.isEmpty()) {
-                    tempResource.setPayload(versions.get(0).getPayload());
-                    service = deserialize(tempResource);
-                    if (service != null && service.getMetadata() != null) {
-                        historyMap.put(service.getMetadata().getModifiedAt(), new ServiceHistory(service, versions.get(0).getId(), true));
+                for (ServiceHistory entry : getResourceHistory(resource)) {
+                    // Major Change entries (when service version has changed) take precedence
+                    if (entry.isVersionChange()) {
+                        historyMap.put(entry.getModifiedAt(), entry);
+                    } else {
+                        historyMap.putIfAbsent(entry.getModifiedAt(), entry);
                     }
-                    versions.remove(0);
-                } else {
-                    service = deserialize(tempResource);
-                    if (service != null && service.getMetadata() != null) {
-                        historyMap.put(service.getMetadata().getModifiedAt(), new ServiceHistory(service, true));
-                    }
-                }
-
-                // create service update entries
-                for (Version version : versions) {
-                    tempResource = (version.getResource() == null ? getResourceById(version.getParentId()) : version.getResource());
-                    tempResource.setPayload(version.getPayload());
-                    service = deserialize(tempResource);
-                    if (service != null) {
-                        try {
-                            historyMap.putIfAbsent(service.getMetadata().getModifiedAt(), new ServiceHistory(service, version.getId(), false));
-                        } catch (NullPointerException e) {
-                            logger.warn("InfraService with id '{}' does not have Metadata", service.getService().getId());
-                        }
-                    }
-                }
-                service = deserialize(resource);
-                if (service != null && service.getMetadata() != null) {
-                    historyMap.putIfAbsent(service.getMetadata().getModifiedAt(), new ServiceHistory(service, false));
                 }
             }
         }
@@ -349,35 +430,208 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
         return new Browsing<>(history.size(), 0, history.size(), history, null);
     }
 
+    /**
+     * Returns the history entries of a resource, oldest first, reading only the metadata of its versions.
+     * Entries are cached until the resource is modified.
+     */
+    private List<ServiceHistory> getResourceHistory(Resource resource) {
+        String key = resource.getModificationDate() != null
+                ? resource.getId() + ":" + resource.getModificationDate().getTime() : null;
+        List<ServiceHistory> history = key != null ? resourceHistoryCache.getIfPresent(key) : null;
+        if (history != null) {
+            return history;
+        }
+        history = new ArrayList<>();
+        List<Version> versions = versionService.getVersionsByResource(resource.getId());
+        versions.sort(Comparator.comparing(Version::getCreationDate));
+
+        if (versions.isEmpty()) {
+            addHistoryEntry(history, resource.getPayload(), null, true);
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            Version version = versions.get(i);
+            versionResourceCache.put(version.getId(), resource.getId());
+            if (!addHistoryEntry(history, version.getPayload(), version.getId(), i == 0)) {
+                logger.warn("Version '{}' of resource '{}' does not have Metadata", version.getId(), resource.getId());
+            }
+        }
+        addHistoryEntry(history, resource.getPayload(), null, false);
+
+        if (key != null) {
+            resourceHistoryCache.put(key, history);
+        }
+        return history;
+    }
+
+    private boolean addHistoryEntry(List<ServiceHistory> history, String payload, String coreVersionId, boolean versionChange) {
+        ServiceHistory entry = payloadParser.readServiceHistory(payload);
+        if (entry == null || entry.getModifiedAt() == null) {
+            return false;
+        }
+        entry.setCoreVersionId(coreVersionId);
+        entry.setVersionChange(versionChange);
+        history.add(entry);
+        return true;
+    }
+
     @Override
     public Service getVersionHistory(String serviceId, String versionId) {
+        String resourceId = versionResourceCache.getIfPresent(versionId);
+        Service service = resourceId != null ? getVersion(serviceId, resourceId, versionId) : null;
+        if (service != null) {
+            return service;
+        }
         List<Resource> resources = getResourcesWithServiceId(serviceId);
-        Service service = new Service();
-        List<Version> versions;
-        List<Version> allVersions = new ArrayList<>();
-
-        if (resources != null) {
-            for (Resource resource : resources) {
-                versions = versionService.getVersionsByResource(resource.getId());
-                allVersions.addAll(versions);
-            }
-            for (Version version : allVersions) {
-                if (version.getId().matches(versionId)) {
-                    Resource tempResource = version.getResource();
-                    tempResource.setPayload(version.getPayload());
-                    service = Objects.requireNonNull(deserialize(tempResource)).getService();
-                    break;
+        if (resources == null) {
+            throw new ValidationException("Service with id '" + serviceId + "' does not exist.");
+        }
+        // the resource of the version, from the history entries, which also caches the resource of each version
+        resourceId = null;
+        for (Resource resource : resources) {
+            for (ServiceHistory entry : getResourceHistory(resource)) {
+                if (versionId.equals(entry.getCoreVersionId())) {
+                    resourceId = resource.getId();
                 }
             }
-            return service;
-        } else {
+        }
+        service = resourceId != null ? getVersion(serviceId, resourceId, versionId) : null;
+        return service != null ? service : new Service();
+    }
+
+    // the service of a version of the resource, or null if the version does not belong to the service
+    private Service getVersion(String serviceId, String resourceId, String versionId) {
+        for (Version version : versionService.getVersionsByResource(resourceId)) {
+            if (version.getId().equals(versionId)) {
+                Resource tempResource = new Resource();
+                tempResource.setId(resourceId);
+                tempResource.setPayload(version.getPayload());
+                InfraService infraService = deserialize(tempResource);
+                return infraService != null && serviceId.equals(infraService.getService().getId())
+                        ? infraService.getService() : null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Browsing<ServiceHistoryDiff> getHistoryDiff(String serviceId) {
+        List<Resource> resources = getResourcesWithServiceId(serviceId);
+        if (resources == null) {
             throw new ValidationException("Service with id '" + serviceId + "' does not exist.");
         }
+        // the diffs are computed again only when a resource of the service is added or modified
+        String key = createHistoryKey(serviceId, resources);
+        List<ServiceHistoryDiff> cached = key != null ? historyDiffCache.getIfPresent(key) : null;
+        if (cached != null) {
+            return new Browsing<>(cached.size(), 0, cached.size(), new ArrayList<>(cached), null);
+        }
+
+        // all the payloads of the service, ordered by modification date (same precedence as getHistory)
+        TreeMap<Long, HistorySnapshot> snapshots = new TreeMap<>();
+        for (Resource resource : resources) {
+            List<Version> versions = versionService.getVersionsByResource(resource.getId());
+            versions.sort(Comparator.comparing(Version::getCreationDate));
+            for (int i = 0; i < versions.size(); i++) {
+                addHistorySnapshot(snapshots, resource.getId(), versions.get(i).getId(), versions.get(i).getPayload(), i == 0);
+            }
+            addHistorySnapshot(snapshots, resource.getId(), null, resource.getPayload(), versions.isEmpty());
+        }
+
+        List<ServiceHistoryDiff> diffs = new ArrayList<>();
+        HistorySnapshot previous = null;
+        Map<String, Object> previousFields = null;
+        for (HistorySnapshot snapshot : snapshots.values()) {
+            Resource tempResource = new Resource();
+            tempResource.setId(snapshot.resourceId);
+            tempResource.setPayload(snapshot.payload);
+            InfraService infraService = deserialize(tempResource);
+            if (infraService == null) {
+                continue;
+            }
+            Map<String, Object> fields = payloadParser.toFieldMap(infraService.getService());
+            if (previous != null) {
+                diffs.add(new ServiceHistoryDiff(snapshot.entry, previous.entry.getCoreVersionId(), diff(previousFields, fields)));
+            }
+            previous = snapshot;
+            previousFields = fields;
+        }
+        Collections.reverse(diffs);
+        if (key != null) {
+            historyDiffCache.put(key, new ArrayList<>(diffs));
+        }
+
+        return new Browsing<>(diffs.size(), 0, diffs.size(), diffs, null);
+    }
+
+    // service id and the id/modification date of each resource, or null if a resource has no modification date
+    private static String createHistoryKey(String serviceId, List<Resource> resources) {
+        List<Resource> sorted = new ArrayList<>(resources);
+        sorted.sort(Comparator.comparing(Resource::getId));
+        StringJoiner key = new StringJoiner(":").add(serviceId);
+        for (Resource resource : sorted) {
+            if (resource.getModificationDate() == null) {
+                return null;
+            }
+            key.add(resource.getId()).add(String.valueOf(resource.getModificationDate().getTime()));
+        }
+        return key.toString();
+    }
+
+    private void addHistorySnapshot(TreeMap<Long, HistorySnapshot> snapshots, String resourceId, String coreVersionId,
+                                    String payload, boolean versionChange) {
+        ServiceHistory entry = payloadParser.readServiceHistory(payload);
+        if (entry == null || entry.getModifiedAt() == null) {
+            return;
+        }
+        entry.setCoreVersionId(coreVersionId);
+        entry.setVersionChange(versionChange);
+        HistorySnapshot snapshot = new HistorySnapshot(resourceId, entry, payload);
+        if (versionChange) {
+            snapshots.put(Long.parseLong(entry.getModifiedAt()), snapshot);
+        } else {
+            snapshots.putIfAbsent(Long.parseLong(entry.getModifiedAt()), snapshot);
+        }
+    }
+
+    private static List<ServiceHistoryDiff.FieldChange> diff(Map<String, Object> oldFields, Map<String, Object> newFields) {
+        Set<String> fields = new LinkedHashSet<>(oldFields.keySet());
+        fields.addAll(newFields.keySet());
+        List<ServiceHistoryDiff.FieldChange> changes = new ArrayList<>();
+        for (String field : fields) {
+            Object oldValue = oldFields.get(field);
+            Object newValue = newFields.get(field);
+            if (!Objects.equals(oldValue, newValue)) {
+                changes.add(new ServiceHistoryDiff.FieldChange(field, oldValue, newValue));
+            }
+        }
+        return changes;
+    }
+
+    private static class HistorySnapshot {
+        private final String resourceId;
+        private final ServiceHistory entry;
+        private final String payload;
+
+        private HistorySnapshot(String resourceId, ServiceHistory entry, String payload) {
+            this.resourceId = resourceId;
+            this.entry = entry;
+            this.payload = payload;
+        }
+    }
+
+    public ParserService.ParserServiceTypes getCoreFormat() {
+        return payloadParser.getCoreFormat(getResourceType());
+    }
+
+    @Override
+    public void migrateCoreFormat() {
+        coreFormatMigrator.checkIndexFields(getResourceType());
+        coreFormatMigrator.migrate(resourceType, this::deserialize, latestServiceIndex::clear);
     }
 
     private String serialize(InfraService infraService) {
         String serialized;
-        serialized = parserPool.serialize(infraService, ParserService.ParserServiceTypes.XML);
+        serialized = payloadParser.serialize(infraService, getCoreFormat());
         return serialized;
     }
 
@@ -386,13 +640,25 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
             logger.warn("attempt to deserialize null resource");
             return null;
         }
-        return parserPool.deserialize(resource, InfraService.class);
+        return deserializedObjectCache.get(resource, InfraService.class, r -> payloadParser.deserialize(r, InfraService.class));
+    }
+
+    @Override
+    public Iterator<List<InfraService>> cursor(FacetFilter ff, int pageSize) {
+        ff.setResourceType(getResourceType());
+        return searchServiceEIC.cursor(ff, pageSize, this::deserialize);
+    }
+
+    @Override
+    public List<InfraService> getAllResults(FacetFilter ff) {
+        ff.setResourceType(getResourceType());
+        return searchServiceEIC.scrollAll(ff, this::deserialize);
     }
 
     public InfraService getOrNull(String id) {
         Resource serviceResource = getResource(id, "latest");
         if (serviceResource != null) {
-            return parserPool.deserialize(serviceResource, InfraService.class);
+            return deserialize(serviceResource);
         } else {
             return null;
         }
@@ -417,23 +683,26 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     public Resource getResource(String serviceId, String serviceVersion) {
         Paging<Resource> resources;
         if (serviceVersion == null || "".equals(serviceVersion)) {
-            resources = searchService
-                    .cqlQuery(String.format("infra_service_id = \"%s\"", serviceId),
-                            resourceType.getName(), 10000, 0, "modifiedAt", "DESC");
             // return the latest modified resource that does not contain a version attribute
-            for (Resource resource : resources.getResults()) {
-                if (!resource.getPayload().contains("<tns:version>")) {
-                    return resource;
-                }
-            }
-            if (resources.getTotal() > 0) {
-                return resources.getResults().get(0);
+            // (service_version is not indexed for unversioned services)
+            Resource resource = searchServiceEIC.searchFirst(resourceType.getName(),
+                    boolQuery().must(termQuery("infra_service_id", serviceId)).mustNot(existsQuery("service_version")),
+                    "modifiedAt", SortOrder.DESC);
+            if (resource == null) {
+                resource = searchServiceEIC.searchFirst(resourceType.getName(),
+                        termQuery("infra_service_id", serviceId), "modifiedAt", SortOrder.DESC);
             }
-            return null;
+            return resource;
         } else if ("latest".equals(serviceVersion)) {
-            resources = searchService
-                    .cqlQuery(String.format("infra_service_id = \"%s\" AND latest = true", serviceId),
-                            resourceType.getName(), 1, 0, "modifiedAt", "DESC");
+            Resource resource = latestServiceIndex.get(resourceType.getName(), serviceId);
+            if (resource == null) {
+                resources = searchService
+                        .cqlQuery(String.format("infra_service_id = \"%s\" AND latest = true", serviceId),
+                                resourceType.getName(), 1, 0, "modifiedAt", "DESC");
+                resource = resources.getTotal() == 0 ? null : resources.getResults().get(0);
+                latestServiceIndex.putIfAbsent(serviceId, resource);
+            }
+            return resource;
         } else {
             resources = searchService
                     .cqlQuery(String.format("infra_service_id = \"%s\" AND service_version = \"%s\"", serviceId, serviceVersion), resourceType.getName());
@@ -443,13 +712,12 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     }
 
     private List<Resource> getResourcesWithServiceId(String infraServiceId) {
-        Paging<Resource> resources;
-        resources = searchService
-                .cqlQuery(String.format("infra_service_id = \"%s\"", infraServiceId),
-                        resourceType.getName(), 10000, 0, "modifiedAt", "DESC");
-
-        assert resources != null;
-        return resources.getTotal() == 0 ? null : resources.getResults();
+        FacetFilter ff = new FacetFilter();
+        ff.setResourceType(getResourceType());
+        ff.addFilter("infra_service_id", infraServiceId);
+        ff.setOrderBy(FacetFilterUtils.createOrderBy("modifiedAt", "desc"));
+        List<Resource> resources = searchServiceEIC.scrollAll(ff, resource -> resource);
+        return resources.isEmpty() ? null : resources;
     }
 
     @Override
@@ -475,21 +743,49 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     @Override
     public List<RichService> createRichServices(List<InfraService> infraServices, Authentication auth) {
         logger.trace("Creating RichServices from a list of InfraServices\nAuthentication: {}", auth);
-        List<RichService> richServices = createRichVocabularies(infraServices);
+        richServiceStore.checkSources(vocabularyService.getVocabularyGraph(), providerService.getProviderInfoMap());
+        List<RichService> richServices = new ArrayList<>(infraServices.size());
+        List<InfraService> missing = new ArrayList<>();
+        for (InfraService infraService : infraServices) {
+            RichService richService = richServiceStore.get(infraService);
+            if (richService == null) {
+                missing.add(infraService);
+            }
+            richServices.add(richService);
+        }
+
+        // create and store the derived fields of the services missing from the store
+        if (!missing.isEmpty()) {
+            List<RichService> created = createRichVocabularies(missing);
+            createProviderInfo(created, auth);
+            Iterator<RichService> createdIterator = created.iterator();
+            for (int i = 0; i < richServices.size(); i++) {
+                if (richServices.get(i) == null) {
+                    RichService richService = createdIterator.next();
+                    richServiceStore.put(infraServices.get(i), richService);
+                    richServices.set(i, richService);
+                }
+            }
+        }
         createRichStatistics(richServices, auth);
-        createProviderInfo(richServices, auth);
 
         return richServices;
     }
 
     private List<RichService> createProviderInfo(List<RichService> richServices, Authentication auth) {
+        Map<String, ProviderInfo> providerInfoMap = providerService.getProviderInfoMap();
         for (RichService richService : richServices) {
             List<ProviderInfo> providerInfoList = new ArrayList<>();
             for (String provider : richService.getService().getProviders()) {
-                ProviderInfo providerInfo = new ProviderInfo();
-                providerInfo.setProviderId(providerService.get(provider, auth).getId());
-                providerInfo.setProviderName(providerService.get(provider, auth).getProvider().getName());
-                providerInfo.setProviderAcronym(providerService.get(provider, auth).getProvider().getAcronym());
+                ProviderInfo providerInfo = providerInfoMap.get(provider);
+                if (providerInfo == null) {
+                    ProviderBundle providerBundle = providerService.get(provider, auth);
+                    providerInfo = new ProviderInfo(providerBundle.getId(), providerBundle.getProvider().getName(),
+                            providerBundle.getProvider().getAcronym());
+                } else {
+                    providerInfo = new ProviderInfo(providerInfo.getProviderId(), providerInfo.getProviderName(),
+                            providerInfo.getProviderAcronym());
+                }
                 providerInfoList.add(providerInfo);
             }
             richService.setProviderInfo(providerInfoList);
@@ -524,6 +820,7 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
 
     private List<RichService> createRichVocabularies(List<InfraService> infraServices) {
         Map<String, Vocabulary> allVocabularies = vocabularyService.getVocabulariesMap();
+        VocabularyGraph vocabularyGraph = vocabularyService.getVocabularyGraph();
         Map<String, Funder> allFunders = funderService.getFundersMap();
         List<RichService> richServices = new ArrayList<>();
 
@@ -610,10 +907,11 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
             if (infraService.getService().getScientificSubdomains() != null) {
                 for (String subdomain : infraService.getService().getScientificSubdomains()) {
                     ScientificDomain domain = new ScientificDomain();
-                    String[] parts = subdomain.split("-"); //scientific_subdomain-natural_sciences-mathematics
-                    String domainId = "scientific_domain-" + parts[1];
-                    domain.setDomain(vocabularyService.get(domainId));
-                    domain.setSubdomain(vocabularyService.get(subdomain));
+                    domain.setSubdomain(getVocabulary(vocabularyGraph, subdomain));
+                    domain.setDomain(getParentVocabulary(vocabularyGraph, subdomain, () -> {
+                        String[] parts = subdomain.split("-"); //scientific_subdomain-natural_sciences-mathematics
+                        return "scientific_domain-" + parts[1];
+                    }));
                     domains.add(domain);
                 }
             }
@@ -625,11 +923,12 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
                 for (String subcategory : infraService.getService().getSubcategories()) {
                     Category category = new Category();
                     String[] parts = subcategory.split("-"); //subcategory-access_physical_and_eInfrastructures-instrument_and_equipment-spectrometer
-                    String supercategoryId = "supercategory-" + parts[1];
-                    String categoryId = "category-" + parts[1] + "-" + parts[2];
-                    category.setSuperCategory(vocabularyService.get(supercategoryId));
-                    category.setCategory(vocabularyService.get(categoryId));
-                    category.setSubCategory(vocabularyService.get(subcategory));
+                    category.setSubCategory(getVocabulary(vocabularyGraph, subcategory));
+                    Vocabulary parentCategory = getParentVocabulary(vocabularyGraph, subcategory,
+                            () -> "category-" + parts[1] + "-" + parts[2]);
+                    category.setCategory(parentCategory);
+                    category.setSuperCategory(getParentVocabulary(vocabularyGraph,
+                            parentCategory != null ? parentCategory.getId() : null, () -> "supercategory-" + parts[1]));
                     categories.add(category);
                 }
             }
@@ -640,44 +939,61 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
         return (richServices);
     }
 
+    private Vocabulary getVocabulary(VocabularyGraph vocabularyGraph, String id) {
+        Vocabulary vocabulary = vocabularyGraph.get(id);
+        return vocabulary != null ? vocabulary : vocabularyService.get(id);
+    }
+
+    // vocabularies without a parentId fall back to the parent id derived from their own id
+    private Vocabulary getParentVocabulary(VocabularyGraph vocabularyGraph, String id, Supplier<String> derivedParentId) {
+        Vocabulary parent = vocabularyGraph.getParent(id);
+        return parent != null ? parent : getVocabulary(vocabularyGraph, derivedParentId.get());
+    }
+
     private List<RichService> createRichStatistics(List<RichService> richServices, Authentication auth) {
         Map<String, Integer> serviceVisits = analyticsService.getAllServiceVisits();
-        Map<String, List<Float>> serviceFavourites = eventService.getAllServiceEventValues(Event.UserActionType.FAVOURITE.getKey(), auth);
-        Map<String, List<Float>> serviceRatings = eventService.getAllServiceEventValues(Event.UserActionType.RATING.getKey(), auth);
 
-        for (RichService richService : richServices) {
+        // the user's latest favourite and rating of every service, if auth != null
+        Map<String, Event> userFavourites = new HashMap<>();
+        Map<String, Event> userRatings = new HashMap<>();
+        if (auth != null) {
+            try {
+                Map<String, Map<String, Event>> userEvents = eventService.getUserLatestEvents(auth);
+                userFavourites = userEvents.getOrDefault(Event.UserActionType.FAVOURITE.getKey(), userFavourites);
+                userRatings = userEvents.getOrDefault(Event.UserActionType.RATING.getKey(), userRatings);
+            } catch (OIDCAuthenticationException e) {
+                // user not logged in
+                logger.warn("Authentication Exception", e);
+            } catch (Exception e2) {
+                logger.error(e2);
+            }
+        }
 
-            // set user favourite and rate if auth != null
-            if (auth != null) {
+        for (RichService richService : richServices) {
 
-                List<Event> userEvents;
+            // set user favourite and rate
+            Event userFavourite = userFavourites.get(richService.getService().getId());
+            if (userFavourite != null) {
+                richService.setFavourite("1".equals(userFavourite.getValue()));
+            }
+            Event userRating = userRatings.get(richService.getService().getId());
+            if (userRating != null) {
                 try {
-                    userEvents = eventService.getEvents(Event.UserActionType.FAVOURITE.getKey(), richService.getService().getId(), auth);
-                    if (!userEvents.isEmpty()) {
-                        richService.setFavourite(userEvents.get(0).getValue().equals("1"));
-                    }
-                    userEvents = eventService.getEvents(Event.UserActionType.RATING.getKey(), richService.getService().getId(), auth);
-                    if (!userEvents.isEmpty()) {
-                        richService.setUserRate(Float.parseFloat(userEvents.get(0).getValue()));
-                    }
-                } catch (OIDCAuthenticationException e) {
-                    // user not logged in
-                    logger.warn("Authentication Exception", e);
-                } catch (Exception e2) {
-                    logger.error(e2);
+                    richService.setUserRate(Float.parseFloat(userRating.getValue()));
+                } catch (NumberFormatException e) {
+                    logger.error(e);
                 }
             }
 
-            if (serviceRatings.containsKey(richService.getService().getId())) {
-                int ratings = serviceRatings.get(richService.getService().getId()).size();
-                float rating = serviceRatings.get(richService.getService().getId()).stream().reduce((float) 0.0, Float::sum) / ratings;
+            int ratings = serviceEventAggregates.getCount(Event.UserActionType.RATING.getKey(), richService.getService().getId());
+            if (ratings > 0) {
+                float rating = (float) serviceEventAggregates.getSum(Event.UserActionType.RATING.getKey(), richService.getService().getId()) / ratings;
                 richService.setRatings(ratings);
                 richService.setHasRate(Float.parseFloat(new DecimalFormat("#.##").format(rating)));
-
             }
 
-            if (serviceFavourites.containsKey(richService.getService().getId())) {
-                int favourites = serviceFavourites.get(richService.getService().getId()).stream().mapToInt(Float::intValue).sum();
+            if (serviceEventAggregates.getCount(Event.UserActionType.FAVOURITE.getKey(), richService.getService().getId()) > 0) {
+                int favourites = (int) serviceEventAggregates.getSum(Event.UserActionType.FAVOURITE.getKey(), richService.getService().getId());
                 richService.setFavourites(favourites);
             }
 
@@ -696,51 +1012,13 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     protected Browsing<InfraService> getResults(FacetFilter filter) {
         Browsing<InfraService> browsing;
         filter.setResourceType(getResourceType());
-        browsing = convertToBrowsingEIC(searchServiceEIC.search(filter));
+        // results and facets (each one ignoring its own filter) are retrieved in a single request
+        browsing = convertToBrowsingEIC(searchServiceEIC.searchWithDisjunctiveFacets(filter));
 
-        browsing.setFacets(createCorrectFacets(browsing.getFacets(), filter));
+        browsing.setFacets(removeEmptyFacets(browsing.getFacets()));
         return browsing;
     }
 
-    private List<Facet> createCorrectFacets(List<Facet> serviceFacets, FacetFilter ff) {
-        ff.setQuantity(0);
-
-        Map<String, List<Object>> allFilters = FacetFilterUtils.getFacetFilterFilters(ff);
-
-        List<String> reverseOrderedKeys = new LinkedList<>(allFilters.keySet());
-        Collections.reverse(reverseOrderedKeys);
-
-        for (String filterKey : reverseOrderedKeys) {
-            Map<String, List<Object>> someFilters = new LinkedHashMap<>(allFilters);
-
-            // if last filter is "latest" or "active" continue to next iteration
-            if ("latest".equals(filterKey) || "active".equals(filterKey)) {
-                continue;
-            }
-            someFilters.remove(filterKey);
-
-            FacetFilter facetFilter = FacetFilterUtils.createMultiFacetFilter(someFilters);
-            facetFilter.setResourceType(getResourceType());
-            facetFilter.setBrowseBy(Collections.singletonList(filterKey));
-            List<Facet> facetsCategory = convertToBrowsingEIC(searchServiceEIC.search(facetFilter)).getFacets();
-
-            for (Facet facet : serviceFacets) {
-                if (facet.getField().equals(filterKey)) {
-                    for (Facet facetCategory : facetsCategory) {
-                        if (facetCategory.getField().equals(facet.getField())) {
-                            serviceFacets.set(serviceFacets.indexOf(facet), facetCategory);
-                            break;
-                        }
-                    }
-                    break;
-                }
-            }
-            break;
-        }
-
-        return removeEmptyFacets(serviceFacets);
-    }
-
     private List<Facet> removeEmptyFacets(List<Facet> facetList) {
         return facetList.stream().filter(facet -> !facet.getValues().isEmpty()).collect(toList());
     }
@@ -748,7 +1026,7 @@ public abstract class AbstractServiceManager extends AbstractGenericService<Infr
     private Browsing<InfraService> convertToBrowsingEIC(@NotNull Paging<Resource> paging) {
         List<InfraService> results = paging.getResults()
                 .parallelStream()
-                .map(res -> parserPool.deserialize(res, typeParameterClass))
+                .map(this::deserialize)
                 .collect(Collectors.toList());
         return new Browsing<>(paging, results, labels);
     }
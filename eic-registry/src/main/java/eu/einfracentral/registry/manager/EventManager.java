@@ -3,11 +3,15 @@ package eu.einfracentral.registry.manager;
 import com.google.i18n.phonenumbers.NumberParseException;
 import eu.einfracentral.domain.Event;
 import eu.einfracentral.domain.InfraService;
+import eu.einfracentral.exception.ResourceException;
 import eu.einfracentral.registry.service.EventService;
 import eu.einfracentral.registry.service.InfraServiceService;
+import eu.einfracentral.service.EventRollups;
+import eu.einfracentral.service.EventWriteQueue;
+import eu.einfracentral.service.ServiceEventAggregates;
 import eu.einfracentral.utils.AuthenticationInfo;
+import eu.einfracentral.utils.FacetFilterUtils;
 import eu.openminted.registry.core.domain.FacetFilter;
-import eu.openminted.registry.core.domain.Paging;
 import eu.openminted.registry.core.domain.Resource;
 import eu.openminted.registry.core.exception.ResourceNotFoundException;
 import eu.openminted.registry.core.service.ParserService;
@@ -15,17 +19,26 @@ import eu.openminted.registry.core.service.SearchService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static eu.einfracentral.config.CacheConfig.CACHE_EVENTS;
-import static eu.einfracentral.config.CacheConfig.CACHE_SERVICE_EVENTS;
+import static eu.einfracentral.config.CacheConfig.CACHE_USER_EVENTS;
 
 @Component
 public class EventManager extends ResourceManager<Event> implements EventService {
@@ -33,13 +46,37 @@ public class EventManager extends ResourceManager<Event> implements EventService
     private static final Logger logger = LogManager.getLogger(EventManager.class);
     private ParserService parserService;
     private InfraServiceService<InfraService, InfraService> infraServiceService;
+    private ServiceEventAggregates serviceEventAggregates;
+    private EventWriteQueue eventWriteQueue;
+    private EventRollups eventRollups;
+    private CacheManager cacheManager;
+
+    @Value("${events.queue.batchSize:500}")
+    private int batchSize;
+
+    @Value("${events.queue.maxAttempts:10}")
+    private int maxAttempts;
+
+    @Value("${events.retention.days:365}")
+    private int retentionDays;
+
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private final Map<String, Object> compactionStatus = new ConcurrentHashMap<>();
 
     @Autowired
     public EventManager(ParserService parserService,
-                        @Lazy InfraServiceService<InfraService, InfraService> infraServiceService) {
+                        @Lazy InfraServiceService<InfraService, InfraService> infraServiceService,
+                        ServiceEventAggregates serviceEventAggregates,
+                        EventWriteQueue eventWriteQueue,
+                        EventRollups eventRollups,
+                        CacheManager cacheManager) {
         super(Event.class);
         this.parserService = parserService;
         this.infraServiceService = infraServiceService;
+        this.serviceEventAggregates = serviceEventAggregates;
+        this.eventWriteQueue = eventWriteQueue;
+        this.eventRollups = eventRollups;
+        this.cacheManager = cacheManager;
     }
 
     @Override
@@ -48,45 +85,295 @@ public class EventManager extends ResourceManager<Event> implements EventService
     }
 
     @Override
-    public void deleteEvents(List<Event> events) {
-        if (!events.isEmpty()) {
-            for (Event event : events) {
-                this.delete(event);
-                logger.info("Deleting Event:\n-id: {}\n-Service: {}\n-Type: {}", event.getId(), event.getService(), event.getType());
+    public int deleteEvents(List<Event> events) {
+        List<String> stored = new ArrayList<>();
+        int queued = 0;
+        for (Event event : events) {
+            if (eventWriteQueue.isPending(event.getId())) {
+                // the queued write is dropped, or the event is deleted after it is written
+                eventWriteQueue.delete(event);
+                queued++;
+            } else {
+                stored.add(event.getId());
+            }
+        }
+        int deleted = super.deleteByIds(stored);
+        eventWriteQueue.checkpoint();
+        for (Event event : events) {
+            serviceEventAggregates.remove(event);
+            evictEvents(event);
+            if (event.getUser() != null) {
+                cacheManager.getCache(CACHE_USER_EVENTS).evict(event.getUser());
+            }
+        }
+        logger.info("Deleted {} events, {} queued events", deleted, queued);
+        return deleted + queued;
+    }
+
+    @Override
+    @CacheEvict(value = {CACHE_EVENTS, CACHE_USER_EVENTS}, allEntries = true)
+    public int deleteUserEvents(Authentication authentication) {
+        String user = AuthenticationInfo.getSub(authentication);
+        List<Event> queued = eventWriteQueue.getPending(user);
+        for (Event event : queued) {
+            eventWriteQueue.delete(event);
+        }
+        FacetFilter ff = new FacetFilter();
+        ff.addFilter("event_user", user);
+        int deleted = super.deleteByFilter(ff);
+        eventWriteQueue.checkpoint();
+        serviceEventAggregates.removeUser(user);
+        logger.info("Deleted {} events, {} queued events of user '{}'", deleted, queued.size(), user);
+        return deleted + queued.size();
+    }
+
+    // the bulk deletes bypass the write queue, so the aggregates are rebuilt in the background, the cached events are
+    // evicted, and the journal is rewritten so that earlier writes of the deleted events are not replayed.
+    // They all delete through deleteResources(), which subtracts the deleted events from the rollups
+
+    @Override
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @CacheEvict(value = {CACHE_EVENTS, CACHE_USER_EVENTS}, allEntries = true)
+    public List<Event> delAll() {
+        // queued writes are dropped, so that they are not written after the stored events are deleted
+        for (EventWriteQueue.PendingEvent pendingEvent : eventWriteQueue.getPending()) {
+            if (pendingEvent.getOperation() != EventWriteQueue.Operation.DELETE) {
+                eventWriteQueue.delete(pendingEvent.getEvent());
             }
         }
+        return super.delAll();
+    }
+
+    @Override
+    @CacheEvict(value = {CACHE_EVENTS, CACHE_USER_EVENTS}, allEntries = true)
+    public int deleteByFilter(FacetFilter ff) {
+        int deleted = super.deleteByFilter(ff);
+        eventWriteQueue.checkpoint();
+        serviceEventAggregates.rebuildLater();
+        return deleted;
     }
 
     @Override
-    @CacheEvict(value = {CACHE_EVENTS, CACHE_SERVICE_EVENTS}, allEntries = true)
+    @CacheEvict(value = {CACHE_EVENTS, CACHE_USER_EVENTS}, allEntries = true)
+    public int deleteByIds(Collection<String> ids) {
+        int deleted = super.deleteByIds(ids);
+        eventWriteQueue.checkpoint();
+        serviceEventAggregates.rebuildLater();
+        return deleted;
+    }
+
+    @Override
+    protected List<Resource> deleteResources(List<Resource> resources) {
+        return eventRollups.write(changes -> {
+            List<Resource> deleted = super.deleteResources(resources);
+            deleted.forEach(resource -> changes.removed(deserialize(resource)));
+            return deleted;
+        });
+    }
+
+    // events are queued and written in batches by flushEvents(), the cached events are evicted when they are written
+
+    @Override
+    @CacheEvict(value = CACHE_USER_EVENTS, key = "#event.user", condition = "#event.user != null")
     public Event add(Event event, Authentication auth) {
         event.setId(UUID.randomUUID().toString());
         event.setInstant(System.currentTimeMillis());
-        Event ret = super.add(event, auth);
+        eventWriteQueue.add(event);
+        serviceEventAggregates.add(event);
         logger.debug("Adding Event: {}", event);
-        return ret;
+        return event;
     }
 
     @Override
-    @CacheEvict(value = {CACHE_EVENTS, CACHE_SERVICE_EVENTS}, allEntries = true)
+    @CacheEvict(value = CACHE_USER_EVENTS, key = "#event.user", condition = "#event.user != null")
     public Event update(Event event, Authentication auth) {
+        checkExists(event);
         event.setInstant(System.currentTimeMillis());
-        Event ret = super.update(event, auth);
+        eventWriteQueue.update(event);
+        serviceEventAggregates.add(event);
         logger.debug("Updating Event: {}", event);
-        return ret;
+        return event;
     }
 
     @Override
-    @CacheEvict(value = {CACHE_EVENTS, CACHE_SERVICE_EVENTS}, allEntries = true)
+    @CacheEvict(value = CACHE_USER_EVENTS, key = "#event.user", condition = "#event.user != null")
+    public void delete(Event event) {
+        checkExists(event);
+        eventWriteQueue.delete(event);
+        serviceEventAggregates.remove(event);
+    }
+
+    // queued writes are checked before they are queued, so that they do not fail when they are written
+    private void checkExists(Event event) {
+        if (event.getId() == null || eventWriteQueue.isDeleted(event.getId())
+                || (!eventWriteQueue.isPending(event.getId()) && !exists(event))) {
+            throw new ResourceException(String.format("Event with id '%s' does not exist", event.getId()), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Writes the queued events to the registry, in batches of 'events.queue.batchSize'.
+     * Writes replayed from the journal may already be applied, so they are skipped when they conflict.
+     * Other writes that conflict are retried up to 'events.queue.maxAttempts' times.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${events.queue.flushDelay:1000}")
+    public void flushEvents() {
+        List<EventWriteQueue.PendingEvent> batch = eventWriteQueue.peek(batchSize);
+        while (!batch.isEmpty()) {
+            List<EventWriteQueue.PendingEvent> written = new ArrayList<>();
+            List<EventWriteQueue.PendingEvent> failed = new ArrayList<>();
+            for (EventWriteQueue.PendingEvent pendingEvent : batch) {
+                try {
+                    write(pendingEvent);
+                    written.add(pendingEvent);
+                } catch (ResourceException e) {
+                    boolean conflict = e.getStatus() == HttpStatus.CONFLICT || e.getStatus() == HttpStatus.NOT_FOUND;
+                    if (conflict && pendingEvent.isReplayed()) {
+                        // already applied before a restart
+                        logger.warn("Skipping replayed {} of Event '{}': {}", pendingEvent.getOperation(), pendingEvent.getEvent().getId(), e.getMessage());
+                        written.add(pendingEvent);
+                    } else if (conflict && pendingEvent.getAttempts() + 1 >= maxAttempts) {
+                        logger.error("Dropping {} of Event '{}' after {} attempts: {}", pendingEvent.getOperation(),
+                                pendingEvent.getEvent(), maxAttempts, e.getMessage());
+                        written.add(pendingEvent);
+                    } else {
+                        logger.error("Could not {} Event '{}'", pendingEvent.getOperation(), pendingEvent.getEvent().getId(), e);
+                        failed.add(pendingEvent);
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Could not {} Event '{}'", pendingEvent.getOperation(), pendingEvent.getEvent().getId(), e);
+                    failed.add(pendingEvent);
+                }
+            }
+            // the rollup changes are sent before the writes leave the journal, replaying a write does not change them
+            eventRollups.flush();
+            eventWriteQueue.done(written);
+            eventWriteQueue.retry(failed);
+            for (EventWriteQueue.PendingEvent pendingEvent : written) {
+                evictEvents(pendingEvent.getEvent());
+            }
+            logger.debug("Flushed {} Event writes", written.size());
+            if (!failed.isEmpty()) {
+                logger.warn("{} Event writes failed and will be retried, {} are queued", failed.size(), eventWriteQueue.size());
+                break;
+            }
+            batch = eventWriteQueue.peek(batchSize);
+        }
+    }
+
+    // evicts the cached event lists that contain the event
+    private void evictEvents(Event event) {
+        Cache cache = cacheManager.getCache(CACHE_EVENTS);
+        String typeAndService = event.getType() + ":" + event.getService();
+        cache.evict("user_service:" + typeAndService + ":" + event.getUser());
+        cache.evict("service:" + typeAndService);
+        cache.evict("user:" + event.getType() + ":" + event.getUser());
+    }
+
+    /**
+     * Deletes the events older than 'events.retention.days' that are not the latest event of their user, service and type.
+     * The latest events hold the current state, the rest are only needed by the statistics of the retention window.
+     * Events are only deleted once the rollups are built, the rollups keep counting them.
+     */
+    @Override
+    @Async
+    @Scheduled(cron = "${events.compaction.cron:0 0 4 * * *}")
+    public void compactEvents() {
+        if (!compacting.compareAndSet(false, true)) {
+            logger.info("Event compaction is already running");
+            return;
+        }
+        long scanned = 0;
+        long deleted = 0;
+        compactionStatus.clear();
+        compactionStatus.put("running", true);
+        compactionStatus.put("startedAt", new Date());
+        try {
+            if (!eventRollups.isAvailable()) {
+                throw new IllegalStateException("The event rollups are not built, the events cannot be compacted");
+            }
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+            compactionStatus.put("cutoff", new Date(cutoff));
+            logger.info("Compacting events older than {}", new Date(cutoff));
+            // events are scanned from the most recent to the oldest, the first one of each key is kept
+            Set<String> latest = new HashSet<>();
+            FacetFilter ff = new FacetFilter();
+            ff.setOrderBy(FacetFilterUtils.createOrderBy("instant", "desc"));
+            Iterator<List<Event>> pages = cursor(ff, 1000);
+            while (pages.hasNext()) {
+                for (Event event : pages.next()) {
+                    scanned++;
+                    boolean isLatest = latest.add(String.join(":", event.getType(), event.getService(), event.getUser()));
+                    if (!isLatest && event.getInstant() < cutoff && !eventWriteQueue.isDeleted(event.getId())) {
+                        if (deleted == 0) {
+                            eventRollups.markCompacted();
+                        }
+                        super.delete(event);
+                        evictEvents(event);
+                        deleted++;
+                    }
+                }
+                compactionStatus.put("scanned", scanned);
+                compactionStatus.put("deleted", deleted);
+                logger.info("Event compaction: scanned {}, deleted {}", scanned, deleted);
+            }
+        } catch (RuntimeException e) {
+            compactionStatus.put("error", String.valueOf(e.getMessage()));
+            logger.error("Event compaction failed", e);
+        } finally {
+            compactionStatus.put("scanned", scanned);
+            compactionStatus.put("deleted", deleted);
+            compactionStatus.put("running", false);
+            compactionStatus.put("finishedAt", new Date());
+            compacting.set(false);
+        }
+        logger.info("Event compaction finished: scanned {}, deleted {}", scanned, deleted);
+    }
+
+    @Override
+    public Map<String, Object> getCompactionStatus() {
+        return new TreeMap<>(compactionStatus);
+    }
+
+    // writes the event, and corrects the rollups with the stored event it replaced
+    private void write(EventWriteQueue.PendingEvent pendingEvent) {
+        Event event = pendingEvent.getEvent();
+        eventRollups.write(changes -> {
+            switch (pendingEvent.getOperation()) {
+                case ADD:
+                    // the journal does not record whether an add was written before a restart
+                    Resource stored = pendingEvent.isReplayed() ? whereID(event.getId(), false) : null;
+                    if (stored != null) {
+                        changes.removed(deserialize(stored));
+                        super.update(event, null);
+                    } else {
+                        super.add(event, null);
+                    }
+                    changes.added(event);
+                    break;
+                case UPDATE:
+                    changes.removed(get(event.getId()));
+                    super.update(event, null);
+                    changes.added(event);
+                    break;
+                case DELETE:
+                    changes.removed(get(event.getId()));
+                    super.delete(event);
+                    break;
+            }
+            return null;
+        });
+    }
+
+    @Override
+    @CacheEvict(value = CACHE_USER_EVENTS, key = "T(eu.einfracentral.utils.AuthenticationInfo).getSub(#authentication)")
     public Event setFavourite(String serviceId, boolean value, Authentication authentication) throws ResourceNotFoundException {
         if (!infraServiceService.exists(new SearchService.KeyValue("infra_service_id", serviceId))) {
             throw new ResourceNotFoundException("infra_service", serviceId);
         }
         String favouriteValue = value ? "1" : "0";
-        List<Event> events = getEvents(Event.UserActionType.FAVOURITE.getKey(), serviceId, authentication);
-        Event event;
-        if (!events.isEmpty() && sameDay(events.get(0).getInstant())) {
-            event = events.get(0);
+        Event event = getLatestEvent(Event.UserActionType.FAVOURITE.getKey(), serviceId, authentication);
+        if (event != null && sameDay(event.getInstant())) {
             delete(event);
             logger.debug("Deleting previous FAVORITE Event '{}' because it happened more than once in the same day.", event);
         } else {
@@ -102,7 +389,7 @@ public class EventManager extends ResourceManager<Event> implements EventService
     }
 
     @Override
-    @CacheEvict(value = {CACHE_EVENTS, CACHE_SERVICE_EVENTS}, allEntries = true)
+    @CacheEvict(value = CACHE_USER_EVENTS, key = "T(eu.einfracentral.utils.AuthenticationInfo).getSub(#authentication)")
     public Event setRating(String serviceId, String value, Authentication authentication) throws ResourceNotFoundException, NumberParseException {
         if (!infraServiceService.exists(new SearchService.KeyValue("infra_service_id", serviceId))) {
             throw new ResourceNotFoundException("infra_service", serviceId);
@@ -110,10 +397,8 @@ public class EventManager extends ResourceManager<Event> implements EventService
         if (Long.parseLong(value) <= 0 || Long.parseLong(value) > 5) {
             throw new NumberParseException(NumberParseException.ErrorType.valueOf(value), "Rating value must be between [1,5]");
         }
-        List<Event> events = getEvents(Event.UserActionType.RATING.getKey(), serviceId, authentication);
-        Event event;
-        if (!events.isEmpty() && sameDay(events.get(0).getInstant())) {
-            event = events.get(0);
+        Event event = getLatestEvent(Event.UserActionType.RATING.getKey(), serviceId, authentication);
+        if (event != null && sameDay(event.getInstant())) {
             event.setValue(value);
             event = update(event, null);
             logger.debug("Updating RATING Event: {}", event);
@@ -131,89 +416,97 @@ public class EventManager extends ResourceManager<Event> implements EventService
 
     @Override
     public List<Event> getEvents(String eventType) {
-        Paging<Resource> eventResources = searchService
-                .cqlQuery(String.format("type=\"%s\"", eventType), getResourceType(),
-                        10000, 0, "creation_date", "DESC");
-        return pagingToList(eventResources);
+        FacetFilter ff = new FacetFilter();
+        ff.addFilter("type", eventType);
+        return getLatestFirst(ff);
     }
 
+    // the keys of CACHE_EVENTS must match the ones evicted by evictEvents()
+
     @Override
-    @Cacheable(value = CACHE_EVENTS)
+    @Cacheable(value = CACHE_EVENTS, key = "'user_service:' + #eventType + ':' + #serviceId + ':' + T(eu.einfracentral.utils.AuthenticationInfo).getSub(#authentication)",
+            condition = "#authentication != null")
     public List<Event> getEvents(String eventType, String serviceId, Authentication authentication) {
         if (authentication == null) {
             return new ArrayList<>();
         }
-        Paging<Resource> eventResources = searchService.cqlQuery(
-                String.format("type=\"%s\" AND service=\"%s\" AND event_user=\"%s\"",
-                        eventType, serviceId, AuthenticationInfo.getSub(authentication)), getResourceType(),
-                10000, 0, "creation_date", "DESC");
-        return pagingToList(eventResources);
+        FacetFilter ff = new FacetFilter();
+        ff.addFilter("type", eventType);
+        ff.addFilter("service", serviceId);
+        ff.addFilter("event_user", AuthenticationInfo.getSub(authentication));
+        return getLatestFirst(ff);
     }
 
     @Override
-    @Cacheable(value = CACHE_EVENTS)
+    @Cacheable(value = CACHE_EVENTS, key = "'service:' + #eventType + ':' + #serviceId")
     public List<Event> getServiceEvents(String eventType, String serviceId) {
-        Paging<Resource> eventResources = searchService.cqlQuery(String.format("type=\"%s\" AND service=\"%s\"",
-                eventType, serviceId), getResourceType(), 10000, 0, "creation_date", "DESC");
-        return pagingToList(eventResources);
+        FacetFilter ff = new FacetFilter();
+        ff.addFilter("type", eventType);
+        ff.addFilter("service", serviceId);
+        return getLatestFirst(ff);
     }
 
     @Override
-    @Cacheable(value = CACHE_EVENTS)
+    @Cacheable(value = CACHE_EVENTS, key = "'user:' + #eventType + ':' + T(eu.einfracentral.utils.AuthenticationInfo).getSub(#authentication)",
+            condition = "#authentication != null")
     public List<Event> getUserEvents(String eventType, Authentication authentication) {
         if (authentication == null) {
             return new ArrayList<>();
         }
-        Paging<Resource> eventResources = searchService.cqlQuery(String.format("type=\"%s\" AND event_user=\"%s\"",
-                eventType, AuthenticationInfo.getSub(authentication)), getResourceType(),
-                10000, 0, "creation_date", "DESC");
-        return pagingToList(eventResources);
+        FacetFilter ff = new FacetFilter();
+        ff.addFilter("type", eventType);
+        ff.addFilter("event_user", AuthenticationInfo.getSub(authentication));
+        return getLatestFirst(ff);
     }
 
     @Override
-    @Cacheable(value = CACHE_SERVICE_EVENTS)
-    public Map<String, List<Float>> getAllServiceEventValues(String eventType, Authentication authentication) {
-        Map<String, List<Float>> allServiceEvents = new HashMap<>();
+    @Cacheable(value = CACHE_USER_EVENTS, key = "T(eu.einfracentral.utils.AuthenticationInfo).getSub(#authentication)",
+            condition = "#authentication != null")
+    public Map<String, Map<String, Event>> getUserLatestEvents(Authentication authentication) {
+        Map<String, Map<String, Event>> latestEvents = new HashMap<>();
+        if (authentication == null) {
+            return latestEvents;
+        }
+        String user = AuthenticationInfo.getSub(authentication);
         FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        ff.addFilter("type", eventType);
-        Map<String, Object> order = new HashMap<>();
-        Map<String, Object> sort = new HashMap<>();
-        order.put("order", "desc");
-        sort.put("instant", order);
-        ff.setOrderBy(sort);
-        List<Event> events = getAll(ff, authentication).getResults();
-        List<String> serviceList = events.stream().map(Event::getService).distinct().collect(Collectors.toList());
-
-        // for each service
-        for (String service : serviceList) {
-            List<Event> serviceEvents = events.stream()
-                    .filter(e -> e.getService().equals(service))
-                    .collect(Collectors.toList());
-
-            Map<String, Event> userEventsMap = new HashMap<>();
-
-            // for each event, save only the latest user events (events order is descending on field 'instant')
-            for (Event event : serviceEvents) {
-                userEventsMap.putIfAbsent(event.getUser(), event);
+        ff.addFilter("event_user", user);
+        // events are ordered from the most recent to the oldest, keep the first of each type and service
+        for (Event event : getLatestFirst(ff)) {
+            if (!eventWriteQueue.isDeleted(event.getId())) {
+                latestEvents.computeIfAbsent(event.getType(), k -> new HashMap<>()).putIfAbsent(event.getService(), event);
             }
+        }
+        // queued events are not written yet
+        for (Event event : eventWriteQueue.getPending(user)) {
+            latestEvents.computeIfAbsent(event.getType(), k -> new HashMap<>())
+                    .merge(event.getService(), event, (written, queued) -> queued.getInstant() >= written.getInstant() ? queued : written);
+        }
+        return latestEvents;
+    }
 
-            List<Float> eventsValues = userEventsMap.values()
-                    .stream()
-                    .map(Event::getValue)
-                    .map(Float::parseFloat)
-                    .collect(Collectors.toList());
-            allServiceEvents.put(service, eventsValues);
+    // the latest event of the user, queued events included
+    private Event getLatestEvent(String eventType, String serviceId, Authentication authentication) {
+        Event queued = eventWriteQueue.getPending(eventType, serviceId, AuthenticationInfo.getSub(authentication));
+        if (queued != null) {
+            return queued;
         }
+        for (Event event : getEvents(eventType, serviceId, authentication)) {
+            if (!eventWriteQueue.isDeleted(event.getId())) {
+                return event;
+            }
+        }
+        return null;
+    }
 
-        return allServiceEvents;
+    @Override
+    public Map<String, List<Float>> getAllServiceEventValues(String eventType, Authentication authentication) {
+        return serviceEventAggregates.getValues(eventType);
     }
 
-    private List<Event> pagingToList(Paging<Resource> resources) {
-        return resources.getResults()
-                .stream()
-                .map(resource -> parserService.deserialize(resource, Event.class))
-                .collect(Collectors.toList());
+    // retrieves all the matching events, ordered from the most recent to the oldest
+    private List<Event> getLatestFirst(FacetFilter ff) {
+        ff.setOrderBy(FacetFilterUtils.createOrderBy("creation_date", "desc"));
+        return getAllResults(ff);
     }
 
     private boolean sameDay(Long instant) {
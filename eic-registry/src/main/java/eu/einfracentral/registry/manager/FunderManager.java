@@ -2,13 +2,16 @@ package eu.einfracentral.registry.manager;
 
 import eu.einfracentral.domain.Funder;
 import eu.einfracentral.registry.service.FunderService;
+import eu.einfracentral.service.RichServiceStore;
 import eu.openminted.registry.core.domain.FacetFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -18,6 +21,9 @@ public class FunderManager extends ResourceManager<Funder> implements FunderServ
 
     private static final Logger logger = LogManager.getLogger(FunderManager.class);
 
+    @Autowired
+    private RichServiceStore richServiceStore;
+
     public FunderManager() {
         super(Funder.class);
     }
@@ -32,10 +38,24 @@ public class FunderManager extends ResourceManager<Funder> implements FunderServ
     public Funder add(Funder funder, Authentication auth) {
         funder.setId(funder.getAcronym().toLowerCase());
         super.add(funder, auth);
+        richServiceStore.invalidateAll();
         logger.debug("Adding Funder: {}", funder);
         return funder;
     }
 
+    @Override
+    public Funder update(Funder funder, Authentication auth) {
+        Funder ret = super.update(funder, auth);
+        richServiceStore.invalidateAll();
+        return ret;
+    }
+
+    @Override
+    public void delete(Funder funder) {
+        super.delete(funder);
+        richServiceStore.invalidateAll();
+    }
+
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public void addAll(List<Funder> funders, Authentication auth) {
         for (Funder funder : funders) {
@@ -43,27 +63,34 @@ public class FunderManager extends ResourceManager<Funder> implements FunderServ
             logger.debug("Adding Funder: {}", funder.getFundingOrganisation());
             super.add(funder, auth);
         }
+        richServiceStore.invalidateAll();
     }
 
     @Override
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public void deleteAll(Authentication auth) {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<Funder> allFunders = getAll(ff, auth).getResults();
-        for (Funder funder : allFunders) {
-            logger.debug("Deleting Funder: {}", funder.getFundingOrganisation());
-            delete(funder);
-        }
+        int deleted = deleteByFilter(new FacetFilter());
+        logger.info("Deleted {} funders", deleted);
+    }
+
+    @Override
+    public int deleteByFilter(FacetFilter ff) {
+        int deleted = super.deleteByFilter(ff);
+        richServiceStore.invalidateAll();
+        return deleted;
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> ids) {
+        int deleted = super.deleteByIds(ids);
+        richServiceStore.invalidateAll();
+        return deleted;
     }
 
     @Override
     public Map<String, Funder> getFundersMap() {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         Map<String, Funder> fundersMap;
-        fundersMap = getAll(ff, null)
-                .getResults()
+        fundersMap = getAllResults(new FacetFilter())
                 .stream()
                 .collect(Collectors.toMap(Funder::getId, v -> v));
         return fundersMap;
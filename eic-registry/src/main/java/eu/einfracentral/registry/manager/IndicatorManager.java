@@ -14,6 +14,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Component
@@ -57,14 +58,32 @@ public class IndicatorManager extends ResourceManager<Indicator> implements Indi
 
     @Override
     public void delete(Indicator indicator) {
+        checkNotMeasured(indicator.getId());
+        logger.info("Deleting Indicator: {}", indicator);
+        super.delete(indicator);
+    }
+
+    // nothing is deleted if any of the indicators is related to a measurement
+
+    @Override
+    public int deleteByFilter(FacetFilter ff) {
+        getAllResults(ff).forEach(indicator -> checkNotMeasured(indicator.getId()));
+        return super.deleteByFilter(ff);
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> ids) {
+        ids.forEach(this::checkNotMeasured);
+        return super.deleteByIds(ids);
+    }
+
+    private void checkNotMeasured(String indicatorId) {
         FacetFilter ff = new FacetFilter();
-        ff.addFilter("indicator", indicator.getId());
+        ff.addFilter("indicator", indicatorId);
         Browsing<Measurement> measurements = measurementManager.getAll(ff, null);
         if (measurements.getTotal() > 0) {
-            throw new ValidationException("You can't delete the specific Indicator, as it's related to one or more Measurements");
+            throw new ValidationException(String.format("You can't delete the Indicator '%s', as it's related to one or more Measurements", indicatorId));
         }
-        logger.info("Deleting Indicator: {}", indicator);
-        super.delete(indicator);
     }
 
     @Override
@@ -14,6 +14,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
@@ -27,6 +28,7 @@ import java.util.Random;
 import java.util.stream.Collectors;
 
 import static eu.einfracentral.config.CacheConfig.CACHE_FEATURED;
+import static eu.einfracentral.config.CacheConfig.CACHE_SERVICES_BY;
 
 @org.springframework.stereotype.Service("infraServiceService")
 public class InfraServiceManager extends AbstractServiceManager implements InfraServiceService<InfraService, InfraService> {
@@ -57,6 +59,7 @@ public class InfraServiceManager extends AbstractServiceManager implements Infra
     }
 
     @Override
+    @CacheEvict(cacheNames = CACHE_SERVICES_BY, allEntries = true)
     @PreAuthorize("hasRole('ROLE_ADMIN') or @securityService.providerCanAddServices(#auth, #infraService)")
     public InfraService addService(InfraService infraService, Authentication auth) {
         if ((infraService.getService().getId() == null) || ("".equals(infraService.getService().getId()))) {
@@ -80,6 +83,7 @@ public class InfraServiceManager extends AbstractServiceManager implements Infra
     }
 
     @Override
+    @CacheEvict(cacheNames = CACHE_SERVICES_BY, allEntries = true)
     @PreAuthorize("hasRole('ROLE_ADMIN') or " +
             "@securityService.userIsServiceProviderAdmin(#auth, #infraService)")
     public InfraService updateService(InfraService infraService, Authentication auth) {
@@ -152,9 +156,7 @@ public class InfraServiceManager extends AbstractServiceManager implements Infra
     public List<Service> createFeaturedServices() {
         logger.info("Creating and caching 'featuredServices'");
         // TODO: return featured services (for now, it returns a random infraService for each provider)
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<ProviderBundle> providers = providerManager.getAll(ff, null).getResults();
+        List<ProviderBundle> providers = providerManager.getAllResults(new FacetFilter(), null);
         List<Service> featuredServices = new ArrayList<>();
         List<Service> services;
         for (int i = 0; i < providers.size(); i++) {
@@ -170,9 +172,7 @@ public class InfraServiceManager extends AbstractServiceManager implements Infra
 
     @Override
     public List<InfraService> eInfraCentralUpdate(InfraService service) {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<InfraService> services = getAll(ff, null).getResults();
+        List<InfraService> services = getAllResults(new FacetFilter());
         List<InfraService> ret = new ArrayList<>();
         for (InfraService infraService : services) {
             try {
@@ -248,6 +248,7 @@ public class InfraServiceManager extends AbstractServiceManager implements Infra
     }
 
     @Override
+    @CacheEvict(cacheNames = CACHE_SERVICES_BY, allEntries = true)
     public InfraService publish(String serviceId, String version, boolean active, Authentication auth) {
         InfraService service;
         if (version == null || "".equals(version)) {
@@ -15,16 +15,19 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static eu.einfracentral.config.CacheConfig.CACHE_PROVIDERS;
+import static eu.einfracentral.config.CacheConfig.CACHE_PROVIDER_INFO;
 
 @Service("pendingProviderManager")
 public class PendingProviderManager extends ResourceManager<ProviderBundle> implements PendingResourceService<ProviderBundle> {
@@ -50,7 +53,7 @@ public class PendingProviderManager extends ResourceManager<ProviderBundle> impl
 
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle add(ProviderBundle providerBundle, Authentication auth) {
 
         providerBundle.setId(idCreator.createProviderId(providerBundle.getProvider()));
@@ -68,7 +71,7 @@ public class PendingProviderManager extends ResourceManager<ProviderBundle> impl
 
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle update(ProviderBundle providerBundle, Authentication auth) {
         logger.trace("User '{}' is attempting to update the Pending Provider: {}", auth, providerBundle);
         // get existing resource
@@ -83,21 +86,40 @@ public class PendingProviderManager extends ResourceManager<ProviderBundle> impl
 
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public void delete(ProviderBundle providerBundle) {
         super.delete(providerBundle);
     }
 
+    @Override
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
+    public List<ProviderBundle> delAll() {
+        return super.delAll();
+    }
+
+    @Override
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
+    public int deleteByFilter(FacetFilter ff) {
+        return super.deleteByFilter(ff);
+    }
+
+    @Override
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
+    public int deleteByIds(Collection<String> ids) {
+        return super.deleteByIds(ids);
+    }
+
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle transformToPending(ProviderBundle providerBundle, Authentication auth) {
         return transformToPending(providerBundle.getId(), auth);
     }
 
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle transformToPending(String providerId, Authentication auth) {
         logger.trace("User '{}' is attempting to transform the Active Provider with id '{}' to Pending", auth, providerId);
         Resource resource = providerManager.getResource(providerId);
@@ -108,7 +130,7 @@ public class PendingProviderManager extends ResourceManager<ProviderBundle> impl
 
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle transformToActive(ProviderBundle providerBundle, Authentication auth) {
         logger.trace("User '{}' is attempting to transform the Pending Provider with id '{}' to Active", auth, providerBundle.getId());
         providerManager.validate(providerBundle);
@@ -122,7 +144,7 @@ public class PendingProviderManager extends ResourceManager<ProviderBundle> impl
 
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle transformToActive(String providerId, Authentication auth) {
         logger.trace("User '{}' is attempting to transform the Pending Provider with id {} to Active", auth, providerId);
         ProviderBundle providerBundle = get(providerId);
@@ -167,9 +189,8 @@ public class PendingProviderManager extends ResourceManager<ProviderBundle> impl
         }
         User user = User.of(auth);
         FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return super.getAll(ff, auth).getResults()
+        return getAllResults(ff)
                 .stream().map(p -> {
                     if (userIsPendingProviderAdmin(user, p)) {
                         return p;
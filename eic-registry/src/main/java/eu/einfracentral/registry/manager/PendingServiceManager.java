@@ -6,6 +6,7 @@ import eu.einfracentral.domain.User;
 import eu.einfracentral.registry.service.InfraServiceService;
 import eu.einfracentral.registry.service.PendingResourceService;
 import eu.einfracentral.service.IdCreator;
+import eu.einfracentral.service.LatestServiceIndex;
 import eu.openminted.registry.core.domain.Browsing;
 import eu.openminted.registry.core.domain.FacetFilter;
 import eu.openminted.registry.core.domain.Resource;
@@ -29,13 +30,15 @@ public class PendingServiceManager extends ResourceManager<InfraService> impleme
 
     private final InfraServiceService<InfraService, InfraService> infraServiceService;
     private final IdCreator idCreator;
+    private final LatestServiceIndex latestServiceIndex;
 
     @Autowired
     public PendingServiceManager(InfraServiceService<InfraService, InfraService> infraServiceService,
-                                 IdCreator idCreator) {
+                                 IdCreator idCreator, LatestServiceIndex latestServiceIndex) {
         super(InfraService.class);
         this.infraServiceService = infraServiceService;
         this.idCreator = idCreator;
+        this.latestServiceIndex = latestServiceIndex;
     }
 
     @Override
@@ -44,7 +47,7 @@ public class PendingServiceManager extends ResourceManager<InfraService> impleme
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService add(InfraService service, Authentication auth) {
 
         service.setId(idCreator.createServiceId(service.getService()));
@@ -62,7 +65,7 @@ public class PendingServiceManager extends ResourceManager<InfraService> impleme
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService update(InfraService infraService, Authentication auth) {
         logger.trace("User '{}' is attempting to update the Pending Service with id {}", auth, infraService.getId());
         infraService.setMetadata(Metadata.updateMetadata(infraService.getMetadata(), User.of(auth).getFullName()));
@@ -77,24 +80,25 @@ public class PendingServiceManager extends ResourceManager<InfraService> impleme
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService transformToPending(InfraService infraService, Authentication auth) {
         return transformToPending(infraService.getId(), auth);
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService transformToPending(String serviceId, Authentication auth) {
         logger.trace("User '{}' is attempting to transform the Active Service with id {} to Pending", auth, serviceId);
         InfraService infraService = infraServiceService.get(serviceId);
         Resource resource = infraServiceService.getResource(infraService.getService().getId(), infraService.getService().getVersion());
         resource.setResourceTypeName("infra_service");
         resourceService.changeResourceType(resource, resourceType);
+        latestServiceIndex.remove(infraService.getService().getId());
         return infraService;
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService transformToActive(InfraService infraService, Authentication auth) {
         logger.trace("User '{}' is attempting to transform the Pending Service with id {} to Active", auth, infraService.getId());
         infraServiceService.validate(infraService);
@@ -103,11 +107,12 @@ public class PendingServiceManager extends ResourceManager<InfraService> impleme
         Resource resource = this.getResource(infraService.getId());
         resource.setResourceType(resourceType);
         resourceService.changeResourceType(resource, infraResourceType);
+        latestServiceIndex.remove(infraService.getService().getId());
         return infraService;
     }
 
     @Override
-    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED}, allEntries = true)
+    @CacheEvict(cacheNames = {CACHE_VISITS, CACHE_PROVIDERS, CACHE_FEATURED, CACHE_SERVICES_BY}, allEntries = true)
     public InfraService transformToActive(String serviceId, Authentication auth) {
         logger.trace("User '{}' is attempting to transform the Pending Service with id {} to Active", auth, serviceId);
         InfraService infraService = this.get(serviceId);
@@ -116,6 +121,7 @@ public class PendingServiceManager extends ResourceManager<InfraService> impleme
         Resource resource = this.getResource(serviceId);
         resource.setResourceType(resourceType);
         resourceService.changeResourceType(resource, infraResourceType);
+        latestServiceIndex.remove(infraService.getService().getId());
         return infraService;
     }
 
@@ -16,6 +16,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import static eu.einfracentral.config.CacheConfig.CACHE_PROVIDERS;
+import static eu.einfracentral.config.CacheConfig.CACHE_PROVIDER_INFO;
 
 @Aspect
 @Component
@@ -75,7 +76,7 @@ public class ProviderManagementAspect {
      * @param infraService
      */
     @Async
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public void updateServiceProviderStates(InfraService infraService) {
         for (String providerId : infraService.getService().getProviders()) {
             try {
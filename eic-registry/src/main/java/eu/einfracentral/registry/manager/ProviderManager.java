@@ -1,6 +1,7 @@
 package eu.einfracentral.registry.manager;
 
 import eu.einfracentral.domain.*;
+import eu.einfracentral.dto.ProviderInfo;
 import eu.einfracentral.exception.ValidationException;
 import eu.einfracentral.registry.service.EventService;
 import eu.einfracentral.registry.service.InfraServiceService;
@@ -17,14 +18,19 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.mitre.openid.connect.model.OIDCAuthenticationToken;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.common.exceptions.UnauthorizedUserException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.stream.Collectors;
@@ -42,6 +48,9 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     private final IdCreator idCreator;
     private EventService eventService;
 
+    @Value("${elastic.cursor.pageSize:1000}")
+    private int cursorPageSize;
+
     @Autowired
     public ProviderManager(@Lazy InfraServiceService<InfraService, InfraService> infraServiceService,
                            @Lazy SecurityService securityService, Random randomNumberGenerator,
@@ -63,7 +72,7 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     }
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle add(ProviderBundle provider, Authentication auth) {
 
         provider.setId(idCreator.createProviderId(provider.getProvider()));
@@ -83,7 +92,7 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     }
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle update(ProviderBundle provider, Authentication auth) {
         logger.trace("User '{}' is attempting to update the Provider with id '{}'", auth, provider);
         validate(provider);
@@ -136,20 +145,32 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     @Override
     @Cacheable(value = CACHE_PROVIDERS)
     public Browsing<ProviderBundle> getAll(FacetFilter ff, Authentication auth) {
+        // retrieve providers
+        Browsing<ProviderBundle> providers = super.getAll(ff, auth);
+        providers.setResults(filterUsers(providers.getResults(), auth));
+        return providers;
+    }
+
+    /**
+     * Returns all the providers matching the filter, with the users filtered as in {@link #getAll(FacetFilter, Authentication)}.
+     */
+    public List<ProviderBundle> getAllResults(FacetFilter ff, Authentication auth) {
+        return filterUsers(getAllResults(ff), auth);
+    }
+
+    // admins see all the users, others only the users of their own providers
+    private List<ProviderBundle> filterUsers(List<ProviderBundle> providers, Authentication auth) {
         List<ProviderBundle> userProviders = null;
         if (auth != null && auth.isAuthenticated()) {
             if (securityService.hasRole(auth, "ROLE_ADMIN")) {
-                return super.getAll(ff, auth);
+                return providers;
             }
             // if user is not an admin, check if he is a provider
             userProviders = getMyServiceProviders(auth);
         }
 
-        // retrieve providers
-        Browsing<ProviderBundle> providers = super.getAll(ff, auth);
-
         // create a list of providers without their users
-        List<ProviderBundle> modified = providers.getResults()
+        List<ProviderBundle> modified = providers
                 .stream()
                 .map(p -> {
                     p.getProvider().setUsers(null);
@@ -164,12 +185,11 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
                 modified.add(x);
             });
         }
-        providers.setResults(modified);
-        return providers;
+        return modified;
     }
 
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public void delete(ProviderBundle provider) {
         logger.trace("User is attempting to delete the Provider with id '{}'", provider.getId());
         List<InfraService> services = this.getInfraServices(provider.getId());
@@ -186,8 +206,20 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         super.delete(provider);
     }
 
+    /**
+     * Deletes the providers one by one, so that their services are deleted with them.
+     */
+    @Override
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
+    public List<ProviderBundle> delAll() {
+        List<ProviderBundle> providers = getAllResults(new FacetFilter());
+        providers.forEach(this::delete);
+        return providers;
+    }
+
     @Override
-    @CacheEvict(value = CACHE_PROVIDERS, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO}, allEntries = true)
     public ProviderBundle verifyProvider(String id, Provider.States status, Boolean active, Authentication auth) {
         logger.trace("verifyProvider with id: '{}' | status -> '{}' | active -> '{}'", id, status, active);
         ProviderBundle provider = get(id);
@@ -223,9 +255,7 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         if (auth == null) {
             throw new UnauthorizedUserException("Please log in.");
         } else if (securityService.hasRole(auth, "ROLE_ADMIN")) {
-            FacetFilter ff = new FacetFilter();
-            ff.setQuantity(10000);
-            providers = super.getAll(ff, null).getResults();
+            providers = getAllResults(new FacetFilter());
         } else if (securityService.hasRole(auth, "ROLE_PROVIDER")) {
             providers = getMyServiceProviders(auth);
         } else {
@@ -255,9 +285,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         }
         User user = User.of(auth);
         FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return super.getAll(ff, auth).getResults()
+        return getAllResults(ff)
                 .stream().map(p -> {
                     if (securityService.userIsProviderAdmin(user, p.getId())) {
                         return p;
@@ -271,9 +300,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     public List<InfraService> getInfraServices(String providerId) {
         FacetFilter ff = new FacetFilter();
         ff.addFilter("providers", providerId);
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return infraServiceService.getAll(ff, null).getResults();
+        return infraServiceService.getAllResults(ff);
     }
 
     @Override
@@ -281,9 +309,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         FacetFilter ff = new FacetFilter();
         ff.addFilter("providers", providerId);
         ff.addFilter("latest", "true");
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return infraServiceService.getAll(ff, null).getResults().stream().map(InfraService::getService).collect(Collectors.toList());
+        return infraServiceService.getAllResults(ff).stream().map(InfraService::getService).collect(Collectors.toList());
     }
 
     @Override
@@ -292,9 +319,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         ff.addFilter("providers", providerId);
         ff.addFilter("active", "true");
         ff.addFilter("latest", "true");
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return infraServiceService.getAll(ff, null).getResults().stream().map(InfraService::getService).collect(Collectors.toList());
+        return infraServiceService.getAllResults(ff).stream().map(InfraService::getService).collect(Collectors.toList());
     }
 
     //Gets random Services to be featured at the Carousel
@@ -313,10 +339,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     public List<ProviderBundle> getInactive() {
         FacetFilter ff = new FacetFilter();
         ff.addFilter("active", false);
-        ff.setFrom(0);
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return getAll(ff, null).getResults();
+        return getAllResults(ff, null);
     }
 
     @Override
@@ -324,10 +348,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         FacetFilter ff = new FacetFilter();
         ff.addFilter("providers", providerId);
         ff.addFilter("active", false);
-        ff.setFrom(0);
-        ff.setQuantity(10000);
         ff.setOrderBy(FacetFilterUtils.createOrderBy("name", "asc"));
-        return infraServiceService.getAll(ff, null).getResults();
+        return infraServiceService.getAllResults(ff);
     }
 
     public void activateServices(String providerId) { // TODO: decide how to use service.status variable
@@ -383,14 +405,11 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
     }
 
     @Override
-    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_SERVICE_EVENTS, CACHE_EVENTS}, allEntries = true)
+    @CacheEvict(value = {CACHE_PROVIDERS, CACHE_PROVIDER_INFO, CACHE_EVENTS, CACHE_USER_EVENTS}, allEntries = true)
     public void deleteUserInfo(Authentication authentication) {
         logger.trace("User '{}' is attempting to delete his User Info", authentication);
         String userEmail = ((OIDCAuthenticationToken) authentication).getUserInfo().getEmail();
         String userId = ((OIDCAuthenticationToken) authentication).getUserInfo().getSub();
-        List<Event> allUserEvents = new ArrayList<>();
-        allUserEvents.addAll(eventService.getUserEvents(Event.UserActionType.FAVOURITE.getKey(), authentication));
-        allUserEvents.addAll(eventService.getUserEvents(Event.UserActionType.RATING.getKey(), authentication));
         List<ProviderBundle> allUserProviders = new ArrayList<>(getMyServiceProviders(authentication));
         for (ProviderBundle providerBundle : allUserProviders) {
             if (providerBundle.getProvider().getUsers().size() == 1) {
@@ -399,7 +418,8 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
             }
         }
         logger.info("Attempting to delete all user events");
-        eventService.deleteEvents(allUserEvents);
+        int deleted = eventService.deleteUserEvents(authentication);
+        logger.info("Deleted {} user events", deleted);
         for (ProviderBundle providerBundle : allUserProviders) {
             List<User> updatedUsers = new ArrayList<>();
             for (User user : providerBundle.getProvider().getUsers()) {
@@ -418,6 +438,20 @@ public class ProviderManager extends ResourceManager<ProviderBundle> implements
         }
     }
 
+    @Override
+    @Cacheable(value = CACHE_PROVIDER_INFO)
+    public Map<String, ProviderInfo> getProviderInfoMap() {
+        Map<String, ProviderInfo> providerInfoMap = new HashMap<>();
+        Iterator<List<ProviderBundle>> pages = cursor(new FacetFilter(), cursorPageSize);
+        while (pages.hasNext()) {
+            for (ProviderBundle providerBundle : pages.next()) {
+                providerInfoMap.put(providerBundle.getId(), new ProviderInfo(providerBundle.getId(),
+                        providerBundle.getProvider().getName(), providerBundle.getProvider().getAcronym()));
+            }
+        }
+        return providerInfoMap;
+    }
+
     private void addAuthenticatedUser(Provider provider, Authentication auth) {
         List<User> users;
         User authUser = User.of(auth);
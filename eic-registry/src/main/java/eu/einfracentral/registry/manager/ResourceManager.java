@@ -3,9 +3,14 @@ package eu.einfracentral.registry.manager;
 import eu.einfracentral.domain.Identifiable;
 import eu.einfracentral.exception.ResourceException;
 import eu.einfracentral.registry.service.ResourceService;
+import eu.einfracentral.service.CoreFormatMigrator;
+import eu.einfracentral.service.DeserializedObjectCache;
+import eu.einfracentral.service.PayloadParser;
+import eu.einfracentral.service.SearchServiceEIC;
 import eu.einfracentral.validator.FieldValidator;
 import eu.openminted.registry.core.domain.Browsing;
 import eu.openminted.registry.core.domain.FacetFilter;
+import eu.openminted.registry.core.domain.Paging;
 import eu.openminted.registry.core.domain.Resource;
 import eu.openminted.registry.core.service.AbstractGenericService;
 import eu.openminted.registry.core.service.ParserService;
@@ -13,12 +18,16 @@ import eu.openminted.registry.core.service.SearchService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,6 +42,21 @@ public abstract class ResourceManager<T extends Identifiable> extends AbstractGe
     @Autowired
     private FieldValidator fieldValidator;
 
+    @Autowired
+    private SearchServiceEIC searchServiceEIC;
+
+    @Autowired
+    private DeserializedObjectCache deserializedObjectCache;
+
+    @Autowired
+    private PayloadParser payloadParser;
+
+    @Autowired
+    private CoreFormatMigrator coreFormatMigrator;
+
+    @Value("${resources.delete.batchSize:1000}")
+    private int deleteBatchSize;
+
     public ResourceManager(Class<T> typeParameterClass) {
         super(typeParameterClass);
     }
@@ -110,14 +134,53 @@ public abstract class ResourceManager<T extends Identifiable> extends AbstractGe
     @Override
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public List<T> delAll() {
-        FacetFilter facetFilter = new FacetFilter();
-        facetFilter.setQuantity(10000);
         logger.info("Deleting all Resources");
-        List<T> results = getAll(facetFilter, null).getResults();
-        results.forEach(this::delete);
+        List<T> results = getAllResults(new FacetFilter());
+        // through deleteByFilter, which subclasses override to keep the side effects of their deletes.
+        // It is called on this instance, so subclasses that evict caches on deletes also annotate delAll
+        deleteByFilter(new FacetFilter());
         return results;
     }
 
+    @Override
+    public int deleteByFilter(FacetFilter ff) {
+        ff.setResourceType(getResourceType());
+        Iterator<List<Resource>> pages = searchServiceEIC.cursor(ff, deleteBatchSize, resource -> resource);
+        int deleted = 0;
+        while (pages.hasNext()) {
+            deleted += deleteResources(pages.next()).size();
+            logger.info("Deleted {} '{}' resources", deleted, getResourceType());
+        }
+        return deleted;
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Resource> resources = searchServiceEIC.searchByValues(getResourceType(),
+                String.format("%s_id", resourceType.getName()), ids, null);
+        int deleted = 0;
+        for (int i = 0; i < resources.size(); i += deleteBatchSize) {
+            deleted += deleteResources(resources.subList(i, Math.min(i + deleteBatchSize, resources.size()))).size();
+            logger.info("Deleted {} of {} '{}' resources", deleted, resources.size(), getResourceType());
+        }
+        return deleted;
+    }
+
+    @Override
+    public Iterator<List<T>> cursor(FacetFilter ff, int pageSize) {
+        ff.setResourceType(getResourceType());
+        return searchServiceEIC.cursor(ff, pageSize, this::deserialize);
+    }
+
+    @Override
+    public List<T> getAllResults(FacetFilter ff) {
+        ff.setResourceType(getResourceType());
+        return searchServiceEIC.scrollAll(ff, this::deserialize);
+    }
+
     @Override
     public T validate(T t) {
         logger.debug("Validating Resource '{}' using FieldValidator", t);
@@ -130,7 +193,33 @@ public abstract class ResourceManager<T extends Identifiable> extends AbstractGe
     }
 
     public ParserService.ParserServiceTypes getCoreFormat() {
-        return ParserService.ParserServiceTypes.XML;
+        return payloadParser.getCoreFormat(getResourceType());
+    }
+
+    @Override
+    public void migrateCoreFormat() {
+        coreFormatMigrator.checkIndexFields(getResourceType());
+        coreFormatMigrator.migrate(resourceType, this::deserialize, null);
+    }
+
+    /**
+     * Deletes the resources in parallel.
+     *
+     * @return the deleted resources, failures are logged and skipped.
+     */
+    protected List<Resource> deleteResources(List<Resource> resources) {
+        return resources
+                .parallelStream()
+                .filter(resource -> {
+                    try {
+                        resourceService.deleteResource(resource.getId());
+                        return true;
+                    } catch (RuntimeException e) {
+                        logger.error("Could not delete resource '{}'", resource.getId(), e);
+                        return false;
+                    }
+                })
+                .collect(Collectors.toList());
     }
 
     protected boolean exists(T t) {
@@ -138,7 +227,7 @@ public abstract class ResourceManager<T extends Identifiable> extends AbstractGe
     }
 
     protected String serialize(T t) {
-        String ret = parserPool.serialize(t, getCoreFormat());
+        String ret = payloadParser.serialize(t, getCoreFormat());
         if (ret.equals("failed")) {
             throw new ResourceException(String.format("Not a valid %s!", resourceType.getName()), HttpStatus.BAD_REQUEST);
         }
@@ -146,7 +235,18 @@ public abstract class ResourceManager<T extends Identifiable> extends AbstractGe
     }
 
     protected T deserialize(Resource resource) {
-        return parserPool.deserialize(resource, typeParameterClass);
+        return deserializedObjectCache.get(resource, typeParameterClass, r -> payloadParser.deserialize(r, typeParameterClass));
+    }
+
+    @Override
+    protected Browsing<T> getResults(FacetFilter filter) {
+        filter.setResourceType(getResourceType());
+        Paging<Resource> paging = searchServiceEIC.search(filter);
+        List<T> results = paging.getResults()
+                .stream()
+                .map(this::deserialize)
+                .collect(Collectors.toList());
+        return new Browsing<>(paging, results, labels);
     }
 
     protected Map<String, List<Resource>> groupBy(String field) {
@@ -156,8 +256,15 @@ public abstract class ResourceManager<T extends Identifiable> extends AbstractGe
         return searchService.searchByCategory(ff, field);
     }
 
+    /**
+     * Retrieves the resources with the given ids using batched queries.
+     *
+     * @return the resources in the order of the ids, null for the ids that were not found.
+     */
     protected List<Resource> whereIDin(String... ids) {
-        return Stream.of(ids).map((String id) -> whereID(id, false)).collect(Collectors.toList());
+        Map<String, Resource> results = searchServiceEIC.searchByValuesKeyed(getResourceType(),
+                String.format("%s_id", resourceType.getName()), Arrays.asList(ids));
+        return Stream.of(ids).map(results::get).collect(Collectors.toList());
     }
 
     protected Resource whereID(String id, boolean throwOnNull) {
@@ -2,6 +2,7 @@ package eu.einfracentral.registry.manager;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.einfracentral.domain.Vocabulary;
+import eu.einfracentral.dto.VocabularyGraph;
 import eu.einfracentral.dto.VocabularyTree;
 import eu.einfracentral.exception.ResourceException;
 import eu.einfracentral.registry.service.VocabularyService;
@@ -22,9 +23,12 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,6 +39,8 @@ public class VocabularyManager extends ResourceManager<Vocabulary> implements Vo
     private static final Logger logger = LogManager.getLogger(VocabularyManager.class);
 
     private Map<String, Region> regions = new HashMap<>();
+    private final AtomicReference<VocabularyGraph> vocabularyGraph = new AtomicReference<>();
+    private final AtomicInteger vocabularyChanges = new AtomicInteger();
 
     public VocabularyManager() {
         super(Vocabulary.class);
@@ -81,18 +87,14 @@ public class VocabularyManager extends ResourceManager<Vocabulary> implements Vo
     @Cacheable(value = CACHE_VOCABULARIES)
     public List<Vocabulary> getByType(Vocabulary.Type type) {
         FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
         ff.addFilter("type", type.getKey());
-        return getAll(ff, null).getResults();
+        return getAllResults(ff);
     }
 
     @Override
     @Cacheable(value = CACHE_VOCABULARY_MAP)
     public Map<String, Vocabulary> getVocabulariesMap() {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        return getAll(ff, null)
-                .getResults()
+        return getAllResults(new FacetFilter())
                 .stream()
                 .collect(Collectors.toMap(Vocabulary::getId, v -> v));
     }
@@ -119,12 +121,32 @@ public class VocabularyManager extends ResourceManager<Vocabulary> implements Vo
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @CacheEvict(value = {CACHE_VOCABULARIES, CACHE_VOCABULARY_MAP, CACHE_VOCABULARY_TREE}, allEntries = true)
     public void deleteAll(Authentication auth) {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<Vocabulary> allVocs = getAll(ff, auth).getResults();
-        for (Vocabulary vocabulary : allVocs) {
-            delete(vocabulary);
-        }
+        int deleted = super.deleteByFilter(new FacetFilter());
+        invalidateVocabularyGraph();
+        logger.info("Deleted {} vocabularies", deleted);
+    }
+
+    @Override
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @CacheEvict(value = {CACHE_VOCABULARIES, CACHE_VOCABULARY_MAP, CACHE_VOCABULARY_TREE}, allEntries = true)
+    public List<Vocabulary> delAll() {
+        return super.delAll();
+    }
+
+    @Override
+    @CacheEvict(value = {CACHE_VOCABULARIES, CACHE_VOCABULARY_MAP, CACHE_VOCABULARY_TREE}, allEntries = true)
+    public int deleteByFilter(FacetFilter ff) {
+        int deleted = super.deleteByFilter(ff);
+        invalidateVocabularyGraph();
+        return deleted;
+    }
+
+    @Override
+    @CacheEvict(value = {CACHE_VOCABULARIES, CACHE_VOCABULARY_MAP, CACHE_VOCABULARY_TREE}, allEntries = true)
+    public int deleteByIds(Collection<String> ids) {
+        int deleted = super.deleteByIds(ids);
+        invalidateVocabularyGraph();
+        return deleted;
     }
 
     @Override
@@ -167,6 +189,25 @@ public class VocabularyManager extends ResourceManager<Vocabulary> implements Vo
         return root;
     }
 
+    @Override
+    public VocabularyGraph getVocabularyGraph() {
+        VocabularyGraph graph = vocabularyGraph.get();
+        if (graph == null) {
+            int changes = vocabularyChanges.get();
+            graph = new VocabularyGraph(getVocabulariesMap().values());
+            // do not publish a graph built while vocabularies were changing
+            if (changes == vocabularyChanges.get()) {
+                vocabularyGraph.compareAndSet(null, graph);
+            }
+        }
+        return graph;
+    }
+
+    private void invalidateVocabularyGraph() {
+        vocabularyChanges.incrementAndGet();
+        vocabularyGraph.set(null);
+    }
+
     @Override
     @CacheEvict(value = {CACHE_VOCABULARIES, CACHE_VOCABULARY_MAP, CACHE_VOCABULARY_TREE}, allEntries = true)
     public Vocabulary add(Vocabulary vocabulary, Authentication auth) {
@@ -188,6 +229,7 @@ public class VocabularyManager extends ResourceManager<Vocabulary> implements Vo
         created.setPayload(serialized);
         created.setResourceType(resourceType);
         resourceService.addResource(created);
+        invalidateVocabularyGraph();
         logger.debug("Adding Vocabulary {}", vocabulary);
         return vocabulary;
     }
@@ -202,10 +244,18 @@ public class VocabularyManager extends ResourceManager<Vocabulary> implements Vo
         existing.setPayload(serialized);
         existing.setResourceType(resourceType);
         resourceService.updateResource(existing);
+        invalidateVocabularyGraph();
         logger.debug("Updating Vocabulary {}", vocabulary);
         return vocabulary;
     }
 
+    @Override
+    @CacheEvict(value = {CACHE_VOCABULARIES, CACHE_VOCABULARY_MAP, CACHE_VOCABULARY_TREE}, allEntries = true)
+    public void delete(Vocabulary vocabulary) {
+        super.delete(vocabulary);
+        invalidateVocabularyGraph();
+    }
+
     private void fetchRegion(Region region) {
         try {
             HttpURLConnection c = (HttpURLConnection) new URL(region.getSource()).openConnection();
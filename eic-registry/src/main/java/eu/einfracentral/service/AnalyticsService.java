@@ -1,39 +1,63 @@
 package eu.einfracentral.service;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.PropertySource;
-import org.springframework.http.*;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
+import javax.annotation.PreDestroy;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static eu.einfracentral.config.CacheConfig.CACHE_VISITS;
 
+/**
+ * Visits of the services, from Matomo.
+ * <p>
+ * The visits of each label are kept for {@code matomo.cache.staleSeconds}. After {@code matomo.cache.freshSeconds}
+ * they are still returned, and refreshed in the background, so only the first request of a label waits for Matomo.
+ * Failed requests are not cached, the last successful response is served instead.
+ */
 @Component
 @PropertySource({"classpath:application.properties", "classpath:registry.properties"})
 public class AnalyticsService implements Analytics {
 
     private static final Logger logger = LogManager.getLogger(AnalyticsService.class);
     private static final String visitsTemplate = "%s/index.php?token_auth=%s&module=API&method=Actions.getPageUrls&format=JSON&idSite=%s&period=day&flat=1&filter_limit=100&period=%s&date=last30";
+    private static final String bulkVisitsTemplate = "method=Actions.getPageUrls&idSite=%s&period=day&flat=1&filter_limit=100&period=%s&date=last30&label=%s";
     private static final String serviceVisitsTemplate = "%s/index.php?token_auth=%s&module=API&method=Actions.getPageUrls&format=JSON&idSite=%s&flat=1&period=range&date=2017-01-01,%s";
     private String visits;
     private String serviceVisits;
-    private RestTemplate restTemplate;
-    private HttpHeaders headers;
+
+    private final MatomoClient matomoClient;
+    private final long freshMillis;
+    // interval:label -> visits
+    private final Cache<String, CachedVisits> labelVisits;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "matomo-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Map<String, Integer> lastServiceVisits = new HashMap<>();
 
     @Value("${matomoHost:localhost}")
     private String matomoHost;
@@ -44,18 +68,30 @@ public class AnalyticsService implements Analytics {
     @Value("${matomoSiteId:1}")
     private String matomoSiteId;
 
-    @Value("${matomoAuthorizationHeader:}")
-    private String authorizationHeader;
+    @Autowired
+    public AnalyticsService(MatomoClient matomoClient,
+                            @Value("${matomo.cache.freshSeconds:300}") long freshSeconds,
+                            @Value("${matomo.cache.staleSeconds:86400}") long staleSeconds,
+                            @Value("${matomo.cache.maxSize:20000}") long maxSize) {
+        this.matomoClient = matomoClient;
+        this.freshMillis = TimeUnit.SECONDS.toMillis(freshSeconds);
+        this.labelVisits = CacheBuilder.newBuilder()
+                .expireAfterWrite(staleSeconds, TimeUnit.SECONDS)
+                .maximumSize(maxSize)
+                .build();
+    }
 
     @PostConstruct
     void postConstruct() {
-        restTemplate = new RestTemplate();
-        headers = new HttpHeaders();
-        headers.add("Authorization", authorizationHeader);
         visits = String.format(visitsTemplate, matomoHost, matomoToken, matomoSiteId, "%s");
         serviceVisits = String.format(serviceVisitsTemplate, matomoHost, matomoToken, matomoSiteId, "%s");
     }
 
+    @PreDestroy
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+
     /**
      * Scheduler that refreshes CACHE_VISITS every 5 minutes.
      *
@@ -75,28 +111,124 @@ public class AnalyticsService implements Analytics {
 
     @Override
     public Map<String, Integer> getVisitsForLabel(String label, StatisticsService.Interval by) {
+        return getVisitsForLabels(Collections.singletonList(label), by).getOrDefault(label, new HashMap<>());
+    }
+
+    @Override
+    public Map<String, Map<String, Integer>> getVisitsForLabels(Collection<String> labels, StatisticsService.Interval by) {
+        Map<String, Map<String, Integer>> visits = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String label : new LinkedHashSet<>(labels)) {
+            CachedVisits cached = labelVisits.getIfPresent(createKey(label, by));
+            if (cached == null) {
+                missing.add(label);
+                continue;
+            }
+            visits.put(label, cached.visits);
+            if (now - cached.fetchedAt > freshMillis) {
+                stale.add(label);
+            }
+        }
+        if (!stale.isEmpty()) {
+            refresh(stale, by);
+        }
+        if (!missing.isEmpty()) {
+            // only the labels that were never fetched wait for Matomo, bounded by the client timeouts
+            Map<String, Map<String, Integer>> fetched = fetchVisits(missing, by);
+            for (String label : missing) {
+                visits.put(label, fetched != null ? fetched.get(label) : new TreeMap<>());
+            }
+        }
+        return visits;
+    }
+
+    // refreshes the labels in the background, unless they are already being refreshed
+    private void refresh(List<String> labels, StatisticsService.Interval by) {
+        List<String> toRefresh = new ArrayList<>();
+        for (String label : labels) {
+            if (refreshing.add(createKey(label, by))) {
+                toRefresh.add(label);
+            }
+        }
+        if (toRefresh.isEmpty()) {
+            return;
+        }
         try {
-            Map<String, Integer> results = StreamSupport.stream(
-                    Spliterators.spliteratorUnknownSize(getAnalyticsForLabel(label, by).fields(), Spliterator.NONNULL), false).collect(
-                    Collectors.toMap(
-                            Map.Entry::getKey,
-                            dayStats -> dayStats.getValue().get(0) != null ? dayStats.getValue().get(0).path("nb_visits").asInt(0) : 0
-                    )
-            );
-            Map<String, Integer> sortedResults = new TreeMap<>(results);
-            return sortedResults;
-        } catch (Exception e) {
-            logger.warn("Cannot find visits for the label '{}'\n", label, e);
+            refresher.execute(() -> {
+                try {
+                    fetchVisits(toRefresh, by);
+                } finally {
+                    toRefresh.forEach(label -> refreshing.remove(createKey(label, by)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            toRefresh.forEach(label -> refreshing.remove(createKey(label, by)));
         }
-        return new HashMap<>();
+    }
+
+    /**
+     * Fetches the visits of the labels with a single bulk request, and caches them.
+     *
+     * @return the visits of each label, or null if the request failed.
+     */
+    private Map<String, Map<String, Integer>> fetchVisits(List<String> labels, StatisticsService.Interval by) {
+        List<JsonNode> responses = new ArrayList<>();
+        if (labels.size() == 1) {
+            JsonNode json = matomoClient.get(String.format(visits, by.getKey()) + "&label=" + labels.get(0));
+            if (json == null) {
+                return null;
+            }
+            responses.add(json);
+        } else {
+            // the bulk response is an array with the response of each url, in order
+            JsonNode json = matomoClient.post(matomoHost + "/index.php", createBulkRequest(labels, by));
+            if (json == null) {
+                return null;
+            }
+            json.forEach(responses::add);
+        }
+        Map<String, Map<String, Integer>> fetched = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < labels.size(); i++) {
+            Map<String, Integer> results = new TreeMap<>();
+            JsonNode labelStats = i < responses.size() ? responses.get(i) : null;
+            if (labelStats != null && labelStats.isObject()) {
+                labelStats.fields().forEachRemaining(dayStats -> results.put(dayStats.getKey(),
+                        dayStats.getValue().get(0) != null ? dayStats.getValue().get(0).path("nb_visits").asInt(0) : 0));
+            } else {
+                logger.warn("Cannot find visits for the label '{}'", labels.get(i));
+            }
+            fetched.put(labels.get(i), results);
+            labelVisits.put(createKey(labels.get(i), by), new CachedVisits(Collections.unmodifiableMap(results), now));
+        }
+        return fetched;
+    }
+
+    private MultiValueMap<String, String> createBulkRequest(List<String> labels, StatisticsService.Interval by) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("module", "API");
+        form.add("method", "API.getBulkRequest");
+        form.add("format", "JSON");
+        form.add("token_auth", matomoToken);
+        for (int i = 0; i < labels.size(); i++) {
+            try {
+                // the form encoding encodes the query string of each url once more
+                form.add("urls[" + i + "]", String.format(bulkVisitsTemplate, matomoSiteId, by.getKey(),
+                        URLEncoder.encode(labels.get(i), "UTF-8")));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return form;
     }
 
     private Map<String, Integer> getServiceVisits() {
         String date = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
-        JsonNode json = parse(getMatomoResponse(String.format(serviceVisits, date)));
+        JsonNode json = matomoClient.get(String.format(serviceVisits, date));
         if (json != null) {
             try {
-                Spliterators.spliteratorUnknownSize(json.iterator(), Spliterator.NONNULL);
                 Map<String, Integer> results = new HashMap<>();
                 for (JsonNode node : json) {
                     String[] labelValues = node.path("label").textValue().split("/service/");
@@ -104,39 +236,27 @@ public class AnalyticsService implements Analytics {
                         results.putIfAbsent(labelValues[1], node.path("nb_visits").asInt(0));
                     }
                 }
+                lastServiceVisits = results;
                 return results;
             } catch (Exception e) {
                 logger.error("Cannot retrieve visits for all Services\nMatomo response: {}\n", json, e);
             }
         }
-        return new HashMap<>();
+        // keep serving the last visits while Matomo is unavailable
+        return lastServiceVisits;
     }
 
-    private JsonNode getAnalyticsForLabel(String label, StatisticsService.Interval by) {
-        return parse(getMatomoResponse(String.format(visits, by.getKey()) + "&label=" + label));
+    private static String createKey(String label, StatisticsService.Interval by) {
+        return by.getKey() + ":" + label;
     }
 
-    private static JsonNode parse(String json) {
-        try {
-            return new ObjectMapper(new JsonFactory()).readTree(json);
-        } catch (IOException e) {
-            logger.error("ERROR", e);
-        }
-        return null;
-    }
+    private static class CachedVisits {
+        private final Map<String, Integer> visits;
+        private final long fetchedAt;
 
-    private String getMatomoResponse(String url) {
-        try {
-            HttpEntity<String> request = new HttpEntity<>(headers);
-            ResponseEntity<String> responseEntity = restTemplate.exchange(url, HttpMethod.GET, request, String.class);
-            if (responseEntity.getStatusCode() != HttpStatus.OK) {
-                logger.error("Could not retrieve analytics from matomo\nResponse Code: {}\nResponse Body: {}",
-                        responseEntity.getStatusCode().toString(), responseEntity.getBody());
-            }
-            return responseEntity.getBody();
-        } catch (RuntimeException e) {
-            logger.error("Could not retrieve analytics from matomo", e);
+        CachedVisits(Map<String, Integer> visits, long fetchedAt) {
+            this.visits = visits;
+            this.fetchedAt = fetchedAt;
         }
-        return "";
     }
 }
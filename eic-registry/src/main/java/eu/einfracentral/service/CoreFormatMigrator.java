@@ -0,0 +1,121 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.exception.ResourceException;
+import eu.openminted.registry.core.domain.FacetFilter;
+import eu.openminted.registry.core.domain.Resource;
+import eu.openminted.registry.core.domain.ResourceType;
+import eu.openminted.registry.core.domain.index.IndexField;
+import eu.openminted.registry.core.service.ParserService;
+import eu.openminted.registry.core.service.ResourceService;
+import eu.openminted.registry.core.service.ResourceTypeService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Rewrites the payloads of a resource type in its configured core format.
+ */
+@Component
+public class CoreFormatMigrator {
+
+    private static final Logger logger = LogManager.getLogger(CoreFormatMigrator.class);
+
+    private final SearchServiceEIC searchServiceEIC;
+    private final PayloadParser payloadParser;
+    private final ResourceService resourceService;
+    private final ResourceTypeService resourceTypeService;
+
+    @Autowired
+    public CoreFormatMigrator(SearchServiceEIC searchServiceEIC, PayloadParser payloadParser,
+                              ResourceService resourceService, ResourceTypeService resourceTypeService) {
+        this.searchServiceEIC = searchServiceEIC;
+        this.payloadParser = payloadParser;
+        this.resourceService = resourceService;
+        this.resourceTypeService = resourceTypeService;
+    }
+
+    /**
+     * Checks that the resource type can be indexed in its core format. Registry-core reads the path of each index
+     * field as XPath for xml resource types, and as JsonPath for json ones, so a type switched to json needs a
+     * definition with payloadType json and JSON paths before its payloads are migrated.
+     *
+     * @param resourceType the name of the resource type
+     * @throws ResourceException if the definition of the resource type does not match its core format
+     */
+    public void checkIndexFields(String resourceType) {
+        String format = payloadParser.getCoreFormat(resourceType).name().toLowerCase();
+        ResourceType type = resourceTypeService.getResourceType(resourceType);
+        if (type == null) {
+            throw new ResourceException(String.format("Resource type '%s' does not exist", resourceType), HttpStatus.NOT_FOUND);
+        }
+        List<String> mismatched = resourceTypeService.getResourceTypeIndexFields(resourceType)
+                .stream()
+                .filter(field -> field.getPath() != null && !format.equals(pathFormat(field)))
+                .map(IndexField::getName)
+                .collect(Collectors.toList());
+        if (!format.equalsIgnoreCase(type.getPayloadType()) || !mismatched.isEmpty()) {
+            throw new ResourceException(String.format("Cannot migrate '%s' resources to %s: the resource type has "
+                            + "payloadType '%s' and index fields %s with paths of another format",
+                    resourceType, format, type.getPayloadType(), mismatched), HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * Rewrites every payload of the resource type that is not in its core format.
+     * Call {@link #checkIndexFields(String)} first, since errors of an async method do not reach the caller.
+     *
+     * @param resourceType the resource type
+     * @param deserializer reads the payload of a resource, in either format
+     * @param onComplete   runs after the migration, may be null
+     */
+    @Async
+    public void migrate(ResourceType resourceType, Function<Resource, ?> deserializer, Runnable onComplete) {
+        ParserService.ParserServiceTypes coreFormat = payloadParser.getCoreFormat(resourceType.getName());
+        String format = coreFormat.name().toLowerCase();
+        FacetFilter ff = new FacetFilter();
+        ff.setResourceType(resourceType.getName());
+        Iterator<List<Resource>> pages = searchServiceEIC.cursor(ff, resource -> resource);
+        int total = 0;
+        int migrated = 0;
+        logger.info("Migrating '{}' resources to {}", resourceType.getName(), format);
+        try {
+            while (pages.hasNext()) {
+                for (Resource resource : pages.next()) {
+                    total++;
+                    if (format.equals(PayloadParser.formatOf(resource.getPayload()))) {
+                        continue;
+                    }
+                    Object object = deserializer.apply(resource);
+                    String payload = object != null ? payloadParser.serialize(object, coreFormat) : null;
+                    if (payload == null || "failed".equals(payload)) {
+                        logger.warn("Could not migrate resource '{}'", resource.getId());
+                        continue;
+                    }
+                    resource.setPayload(payload);
+                    resource.setPayloadFormat(format);
+                    resource.setResourceType(resourceType);
+                    resourceService.updateResource(resource);
+                    migrated++;
+                }
+                logger.info("Migrated {} of {} '{}' resources to {}", migrated, total, resourceType.getName(), format);
+            }
+        } finally {
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }
+    }
+
+    // JsonPath expressions start from the root '$', XPath expressions from '/' or a function
+    private static String pathFormat(IndexField field) {
+        return field.getPath().trim().startsWith("$") ? "json" : "xml";
+    }
+}
@@ -0,0 +1,402 @@
+package eu.einfracentral.service;
+
+import eu.openminted.registry.core.configuration.ElasticConfiguration;
+import eu.openminted.registry.core.service.ServiceException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Elasticsearch index of the daily event rollups, shared by all the nodes.
+ * <p>
+ * Each document holds the number and sum of the event values of an event type, service and day, and is only
+ * changed by atomic increments, so that the writes of all the nodes are counted. A single state document records
+ * whether the rollups were built from the event index, and whether the event index was compacted since.
+ */
+@Component
+public class EventRollupIndex {
+
+    private static final Logger logger = LogManager.getLogger(EventRollupIndex.class);
+    private static final String MAPPING = "elastic/eventRollupsMapping.json";
+    private static final String STATE_ID = "state";
+    private static final String INCREMENT = "ctx._source.count += params.count; ctx._source.sum += params.sum";
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final int TERMS_CHUNK_SIZE = 1000;
+    private static final int RETRY_ON_CONFLICT = 5;
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final ElasticConfiguration elastic;
+    private final String index;
+    private final int pageSize;
+
+    @Autowired
+    public EventRollupIndex(ElasticConfiguration elastic,
+                            @Value("${events.rollups.index:event_rollups}") String index,
+                            @Value("${elastic.cursor.pageSize:1000}") int pageSize) {
+        this.elastic = elastic;
+        this.index = index;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * The event type, service and day of a rollup.
+     */
+    public static final class Key {
+        private final String type;
+        private final String service;
+        private final LocalDate day;
+
+        public Key(String type, String service, LocalDate day) {
+            this.type = type;
+            this.service = service;
+            this.day = day;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        String getId() {
+            return String.join("|", type, service, DAY.format(day));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type.equals(key.type) && service.equals(key.service) && day.equals(key.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, service, day);
+        }
+
+        @Override
+        public String toString() {
+            return getId();
+        }
+    }
+
+    /**
+     * The state of the rollups. Its sequence number and primary term are those of the stored document.
+     */
+    public static final class State {
+        private Long claimedAt;
+        private Long builtAt;
+        private Long compactedAt;
+        private long seqNo = -1;
+        private long primaryTerm = 0;
+
+        /**
+         * @return when a node started building the rollups, null once they are built
+         */
+        public Long getClaimedAt() {
+            return claimedAt;
+        }
+
+        public State setClaimedAt(Long claimedAt) {
+            this.claimedAt = claimedAt;
+            return this;
+        }
+
+        /**
+         * @return when the rollups were built, null until then
+         */
+        public Long getBuiltAt() {
+            return builtAt;
+        }
+
+        public State setBuiltAt(Long builtAt) {
+            this.builtAt = builtAt;
+            return this;
+        }
+
+        /**
+         * @return when events were first deleted by the compaction, null if the event index was never compacted
+         */
+        public Long getCompactedAt() {
+            return compactedAt;
+        }
+
+        public State setCompactedAt(Long compactedAt) {
+            this.compactedAt = compactedAt;
+            return this;
+        }
+
+        public boolean isBuilt() {
+            return builtAt != null;
+        }
+    }
+
+    /**
+     * Creates the index, unless it exists.
+     */
+    public void create() {
+        try {
+            if (elastic.client().indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+                return;
+            }
+            CreateIndexRequest request = new CreateIndexRequest(index);
+            try (InputStream mapping = getClass().getClassLoader().getResourceAsStream(MAPPING)) {
+                if (mapping == null) {
+                    throw new IllegalStateException(String.format("Could not find '%s' in classpath", MAPPING));
+                }
+                request.source(StreamUtils.copyToString(mapping, StandardCharsets.UTF_8), XContentType.JSON);
+            }
+            elastic.client().indices().create(request, RequestOptions.DEFAULT);
+            logger.info("Created the event rollups index '{}'", index);
+        } catch (ElasticsearchStatusException e) {
+            // created by another node
+            if (e.status() != RestStatus.BAD_REQUEST) {
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return the state of the rollups, or null if it was never stored.
+     */
+    public State getState() {
+        try {
+            GetResponse response = elastic.client().get(new GetRequest(index, STATE_ID), RequestOptions.DEFAULT);
+            if (!response.isExists()) {
+                return null;
+            }
+            Map<String, Object> source = response.getSourceAsMap();
+            State state = new State()
+                    .setClaimedAt(toLong(source.get("claimedAt")))
+                    .setBuiltAt(toLong(source.get("builtAt")))
+                    .setCompactedAt(toLong(source.get("compactedAt")));
+            state.seqNo = response.getSeqNo();
+            state.primaryTerm = response.getPrimaryTerm();
+            return state;
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Stores the state, if the stored state is still the given one.
+     *
+     * @param current the state read by {@link #getState()}, or null if there was none
+     * @param state   the new state
+     * @return false if the stored state changed since it was read
+     */
+    public boolean putState(State current, State state) {
+        Map<String, Object> source = new HashMap<>();
+        source.put("claimedAt", state.getClaimedAt());
+        source.put("builtAt", state.getBuiltAt());
+        source.put("compactedAt", state.getCompactedAt());
+        IndexRequest request = new IndexRequest(index).id(STATE_ID).source(source);
+        if (current == null) {
+            request.opType(DocWriteRequest.OpType.CREATE);
+        } else {
+            request.setIfSeqNo(current.seqNo).setIfPrimaryTerm(current.primaryTerm);
+        }
+        try {
+            elastic.client().index(request, RequestOptions.DEFAULT);
+            return true;
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.CONFLICT) {
+                return false;
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the rollups, keeping the state.
+     */
+    public void clear() {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(index)
+                .setQuery(QueryBuilders.boolQuery().mustNot(QueryBuilders.idsQuery().addIds(STATE_ID)))
+                .setConflicts("proceed")
+                .setRefresh(true);
+        try {
+            elastic.client().deleteByQuery(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Makes the recent writes of the other index searchable.
+     */
+    public void refresh(String otherIndex) {
+        try {
+            elastic.client().indices().refresh(new RefreshRequest(otherIndex), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the number and sum of each increment to its rollup, with a single bulk request.
+     *
+     * @param increments key -> {count, sum}
+     * @return the increments that failed
+     */
+    public Map<Key, double[]> increment(Map<Key, double[]> increments) {
+        if (increments.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<Key> keys = new ArrayList<>(increments.keySet());
+        BulkRequest bulk = new BulkRequest();
+        for (Key key : keys) {
+            double[] increment = increments.get(key);
+            Map<String, Object> params = new HashMap<>();
+            params.put("count", increment[0]);
+            params.put("sum", increment[1]);
+            Map<String, Object> upsert = new HashMap<>();
+            upsert.put("type", key.getType());
+            upsert.put("service", key.getService());
+            upsert.put("day", DAY.format(key.getDay()));
+            upsert.put("count", 0);
+            upsert.put("sum", 0);
+            bulk.add(new UpdateRequest(index, key.getId())
+                    .script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, INCREMENT, params))
+                    .scriptedUpsert(true)
+                    .upsert(upsert)
+                    .retryOnConflict(RETRY_ON_CONFLICT));
+        }
+        Map<Key, double[]> failed = new HashMap<>();
+        BulkResponse response;
+        try {
+            response = elastic.client().bulk(bulk, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+        if (response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    Key key = keys.get(item.getItemId());
+                    failed.put(key, increments.get(key));
+                    logger.warn("Could not increment the event rollup '{}': {}", key, item.getFailureMessage());
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return service id -> day -> {count, sum}, of the days that have events of the given type.
+     */
+    public Map<String, SortedMap<LocalDate, double[]>> getDays(String eventType, Collection<String> serviceIds) {
+        Map<String, SortedMap<LocalDate, double[]>> services = new HashMap<>();
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(serviceIds));
+        for (int i = 0; i < distinct.size(); i += TERMS_CHUNK_SIZE) {
+            BoolQueryBuilder query = QueryBuilders.boolQuery()
+                    .filter(QueryBuilders.termQuery("type", eventType))
+                    .filter(QueryBuilders.termsQuery("service", distinct.subList(i, Math.min(i + TERMS_CHUNK_SIZE, distinct.size()))))
+                    .filter(QueryBuilders.rangeQuery("count").gt(0));
+            scroll(query, hit -> {
+                Map<String, Object> source = hit.getSourceAsMap();
+                services.computeIfAbsent((String) source.get("service"), k -> new TreeMap<>())
+                        .put(LocalDate.parse((String) source.get("day"), DAY), new double[]{
+                                ((Number) source.get("count")).doubleValue(), ((Number) source.get("sum")).doubleValue()});
+            });
+        }
+        return services;
+    }
+
+    private void scroll(BoolQueryBuilder query, Consumer<SearchHit> consumer) {
+        SearchRequest request = new SearchRequest(index)
+                .source(new SearchSourceBuilder().query(query).sort("_doc").size(pageSize))
+                .scroll(SCROLL_KEEP_ALIVE);
+        String scrollId = null;
+        try {
+            SearchResponse response = elastic.client().search(request, RequestOptions.DEFAULT);
+            while (true) {
+                scrollId = response.getScrollId();
+                SearchHit[] hits = response.getHits().getHits();
+                for (SearchHit hit : hits) {
+                    consumer.accept(hit);
+                }
+                if (hits.length < pageSize) {
+                    break;
+                }
+                response = elastic.client().scroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+            }
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        } finally {
+            if (scrollId != null) {
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                try {
+                    elastic.client().clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+                } catch (IOException e) {
+                    logger.warn("Could not clear scroll context", e);
+                }
+            }
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
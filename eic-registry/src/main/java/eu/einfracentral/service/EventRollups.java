@@ -0,0 +1,449 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.domain.Event;
+import eu.einfracentral.exception.ResourceException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+
+/**
+ * Daily rollups (number and sum of event values) of the rating and favourite events of each service.
+ * <p>
+ * The rollups are kept in the {@link EventRollupIndex}, shared by all the nodes, so they survive the compaction of
+ * the raw events. Writes of the event index that go through {@link #write(Function)} add the events they added to
+ * their days and subtract the events they removed, e.g. the previous version of an updated event. The changes are
+ * batched and sent every {@code events.rollups.flushDelay} ms. Days are UTC days, as the date histograms of the event
+ * index were.
+ * <p>
+ * The rollups are built once from the event index, in the background, by the first node that starts. Building them
+ * is only possible while the event index was never compacted, which the compaction records in the rollups index.
+ * Until they are built the statistics are unavailable and the events are not compacted.
+ */
+@Component
+public class EventRollups {
+
+    private static final Logger logger = LogManager.getLogger(EventRollups.class);
+    private static final long BUILD_RETRY_SECONDS = 60;
+    private static final String EVENT_INDEX = "event";
+    private static final int BULK_SIZE = 1000;
+    private static final List<String> ROLLED_UP_TYPES = Arrays.asList(
+            Event.UserActionType.RATING.getKey(), Event.UserActionType.FAVOURITE.getKey());
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final DateTimeFormatter YEAR = DateTimeFormatter.ofPattern("yyyy");
+
+    private final SearchServiceEIC searchServiceEIC;
+    private final PayloadParser payloadParser;
+    private final EventRollupIndex eventRollupIndex;
+    private final long buildTimeoutMillis;
+
+    // writes of the event index and flushes share it, the build takes it exclusively while it clears the rollups
+    // and opens its snapshot of the event index, so that a write is either part of the snapshot or added after it
+    private final ReadWriteLock buildLock = new ReentrantReadWriteLock();
+
+    // guarded by this: changes that are not sent to the rollups index yet, key -> {count, sum}
+    private Map<EventRollupIndex.Key, double[]> increments = new HashMap<>();
+    private volatile boolean available = false;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-rollups-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public EventRollups(SearchServiceEIC searchServiceEIC, PayloadParser payloadParser, EventRollupIndex eventRollupIndex,
+                        @Value("${events.rollups.buildTimeoutMinutes:60}") long buildTimeoutMinutes) {
+        this.searchServiceEIC = searchServiceEIC;
+        this.payloadParser = payloadParser;
+        this.eventRollupIndex = eventRollupIndex;
+        this.buildTimeoutMillis = TimeUnit.MINUTES.toMillis(buildTimeoutMinutes);
+    }
+
+    /**
+     * The changes of a write of the event index.
+     */
+    public static class Changes {
+        private final List<Event> removed = new ArrayList<>();
+        private final List<Event> added = new ArrayList<>();
+
+        /**
+         * @param event the stored event that was deleted, or replaced by an update
+         */
+        public Changes removed(Event event) {
+            removed.add(event);
+            return this;
+        }
+
+        /**
+         * @param event the event that was added, or the update of a stored event
+         */
+        public Changes added(Event event) {
+            added.add(event);
+            return this;
+        }
+    }
+
+    /**
+     * Builds the rollups in the background once the application context is ready, unless they are already built,
+     * retrying until they are.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        builder.execute(() -> {
+            while (!available && !Thread.currentThread().isInterrupted()) {
+                try {
+                    build();
+                } catch (RuntimeException e) {
+                    logger.error("Could not build the event rollups, retrying in {} seconds", BUILD_RETRY_SECONDS, e);
+                }
+                if (!available) {
+                    try {
+                        TimeUnit.SECONDS.sleep(BUILD_RETRY_SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        builder.shutdownNow();
+        flush();
+    }
+
+    /**
+     * @return whether the rollups are built, i.e. the statistics are available and the events may be compacted.
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the number and sum of the values of the events of each bucket, in chronological order.
+     * Buckets between the first and the last non empty bucket are included even if they are empty.
+     */
+    public SortedMap<String, double[]> getBuckets(String eventType, String serviceId, StatisticsService.Interval by) {
+        return getBuckets(eventType, Collections.singletonList(serviceId), by)
+                .getOrDefault(serviceId, new TreeMap<>());
+    }
+
+    /**
+     * Same as {@link #getBuckets(String, String, StatisticsService.Interval)} for many services, with a single query.
+     *
+     * @return the buckets of each service that has events of the given type.
+     */
+    public Map<String, SortedMap<String, double[]>> getBuckets(String eventType, Collection<String> serviceIds,
+                                                              StatisticsService.Interval by) {
+        if (!available) {
+            throw new ResourceException("The event statistics are not available", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        Map<String, SortedMap<LocalDate, double[]>> serviceDays = eventRollupIndex.getDays(eventType, serviceIds);
+        // the changes of this node that are not sent yet
+        Set<String> services = new HashSet<>(serviceIds);
+        synchronized (this) {
+            increments.forEach((key, increment) -> {
+                if (key.getType().equals(eventType) && services.contains(key.getService())) {
+                    merge(serviceDays.computeIfAbsent(key.getService(), k -> new TreeMap<>()), key.getDay(), increment);
+                }
+            });
+        }
+        Map<String, SortedMap<String, double[]>> serviceBuckets = new HashMap<>();
+        for (Map.Entry<String, SortedMap<LocalDate, double[]>> entry : serviceDays.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                serviceBuckets.put(entry.getKey(), toBuckets(entry.getValue(), by));
+            }
+        }
+        return serviceBuckets;
+    }
+
+    /**
+     * Runs a write of the event index, and applies its changes to the rollups.
+     *
+     * @param write writes the index, and records the events it removed and added to the given changes
+     * @return the result of the write
+     */
+    public <T> T write(Function<Changes, T> write) {
+        Changes changes = new Changes();
+        buildLock.readLock().lock();
+        try {
+            return write.apply(changes);
+        } finally {
+            try {
+                apply(changes);
+            } finally {
+                buildLock.readLock().unlock();
+            }
+        }
+    }
+
+    private synchronized void apply(Changes changes) {
+        for (Event event : changes.removed) {
+            add(increments, event, -1);
+        }
+        for (Event event : changes.added) {
+            add(increments, event, 1);
+        }
+    }
+
+    /**
+     * Sends the changes of the writes to the rollups index, with a single bulk request.
+     * Changes that could not be sent are kept, and sent with the next flush.
+     */
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${events.rollups.flushDelay:1000}")
+    public void flush() {
+        Map<EventRollupIndex.Key, double[]> flushed;
+        buildLock.readLock().lock();
+        try {
+            synchronized (this) {
+                if (increments.isEmpty()) {
+                    return;
+                }
+                flushed = increments;
+                increments = new HashMap<>();
+            }
+            Map<EventRollupIndex.Key, double[]> failed;
+            try {
+                failed = eventRollupIndex.increment(flushed);
+            } catch (RuntimeException e) {
+                logger.error("Could not send {} event rollup changes, they will be retried", flushed.size(), e);
+                failed = flushed;
+            }
+            if (!failed.isEmpty()) {
+                synchronized (this) {
+                    failed.forEach((key, increment) -> increments.merge(key, increment,
+                            (a, b) -> new double[]{a[0] + b[0], a[1] + b[1]}));
+                }
+            }
+        } finally {
+            buildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the compaction deletes events, so that the rollups are never rebuilt from the compacted index.
+     */
+    public void markCompacted() {
+        while (true) {
+            EventRollupIndex.State state = eventRollupIndex.getState();
+            if (state == null || !state.isBuilt()) {
+                throw new IllegalStateException("The event rollups are not built");
+            }
+            if (state.getCompactedAt() != null || eventRollupIndex.putState(state, new EventRollupIndex.State()
+                    .setBuiltAt(state.getBuiltAt())
+                    .setCompactedAt(System.currentTimeMillis()))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds the rollups from the event index, unless they are built, or being built by another node.
+     * The events are streamed, only the rollups are kept in memory.
+     */
+    void build() {
+        eventRollupIndex.create();
+        EventRollupIndex.State state = eventRollupIndex.getState();
+        if (state != null && state.isBuilt()) {
+            available = true;
+            logger.info("The event rollups are available");
+            return;
+        }
+        if (state != null && state.getCompactedAt() != null) {
+            logger.error("The event rollups cannot be built, the event index was compacted on {}",
+                    Instant.ofEpochMilli(state.getCompactedAt()));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (state != null && state.getClaimedAt() != null && state.getClaimedAt() > now - buildTimeoutMillis) {
+            logger.info("The event rollups are being built since {}", Instant.ofEpochMilli(state.getClaimedAt()));
+            return;
+        }
+        if (!eventRollupIndex.putState(state, new EventRollupIndex.State().setClaimedAt(now))) {
+            logger.info("The event rollups are being built by another node");
+            return;
+        }
+        EventRollupIndex.State claimed = eventRollupIndex.getState();
+        logger.info("Building the event rollups from the event index");
+
+        Map<EventRollupIndex.Key, double[]> rollups = new HashMap<>();
+        long events = 0;
+        try {
+            Iterator<List<Event>> pages;
+            buildLock.writeLock().lock();
+            try {
+                // the writes made until now are part of the snapshot
+                synchronized (this) {
+                    increments.clear();
+                }
+                eventRollupIndex.clear();
+                eventRollupIndex.refresh(EVENT_INDEX);
+                pages = searchServiceEIC.cursor(EVENT_INDEX, termsQuery("type", ROLLED_UP_TYPES),
+                        resource -> payloadParser.deserialize(resource, Event.class));
+                // opens the scroll context, i.e. the snapshot
+                pages.hasNext();
+            } finally {
+                buildLock.writeLock().unlock();
+            }
+            while (pages.hasNext()) {
+                for (Event event : pages.next()) {
+                    if (add(rollups, event, 1)) {
+                        events++;
+                    }
+                }
+            }
+            List<EventRollupIndex.Key> keys = new ArrayList<>(rollups.keySet());
+            for (int i = 0; i < keys.size(); i += BULK_SIZE) {
+                Map<EventRollupIndex.Key, double[]> bulk = new HashMap<>();
+                for (EventRollupIndex.Key key : keys.subList(i, Math.min(i + BULK_SIZE, keys.size()))) {
+                    bulk.put(key, rollups.get(key));
+                }
+                Map<EventRollupIndex.Key, double[]> failed = eventRollupIndex.increment(bulk);
+                if (!failed.isEmpty()) {
+                    throw new IllegalStateException(String.format("Could not store %d event rollups", failed.size()));
+                }
+            }
+        } catch (RuntimeException e) {
+            // lets the next attempt claim the build
+            try {
+                eventRollupIndex.putState(claimed, new EventRollupIndex.State());
+            } catch (RuntimeException re) {
+                logger.warn("Could not release the build of the event rollups", re);
+            }
+            throw e;
+        }
+        if (!eventRollupIndex.putState(claimed, new EventRollupIndex.State().setBuiltAt(System.currentTimeMillis()))) {
+            logger.warn("The build of the event rollups timed out and was claimed by another node");
+            return;
+        }
+        available = true;
+        logger.info("Built {} event rollups from {} events", rollups.size(), events);
+    }
+
+    // adds (sign 1) or subtracts (sign -1) the value of the event to its day
+    static boolean add(Map<EventRollupIndex.Key, double[]> rollups, Event event, int sign) {
+        if (event == null || event.getService() == null || !ROLLED_UP_TYPES.contains(event.getType())) {
+            return false;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(event.getValue());
+        } catch (NullPointerException | NumberFormatException e) {
+            return false;
+        }
+        EventRollupIndex.Key key = new EventRollupIndex.Key(event.getType(), event.getService(), toDay(event.getInstant()));
+        double[] day = rollups.computeIfAbsent(key, k -> new double[2]);
+        day[0] += sign;
+        day[1] += sign * value;
+        return true;
+    }
+
+    // adds the increment to the day, days without events are removed
+    private static void merge(SortedMap<LocalDate, double[]> days, LocalDate key, double[] increment) {
+        double[] day = days.computeIfAbsent(key, k -> new double[2]);
+        day[0] += increment[0];
+        day[1] += increment[1];
+        if (day[0] <= 0) {
+            days.remove(key);
+        }
+    }
+
+    // merges the days into the buckets of the interval
+    static SortedMap<String, double[]> toBuckets(SortedMap<LocalDate, double[]> days, StatisticsService.Interval by) {
+        SortedMap<String, double[]> buckets = new TreeMap<>();
+        LocalDate last = start(days.lastKey(), by);
+        for (LocalDate start = start(days.firstKey(), by); !start.isAfter(last); start = next(start, by)) {
+            buckets.put(format(start, by), new double[2]);
+        }
+        for (Map.Entry<LocalDate, double[]> day : days.entrySet()) {
+            double[] bucket = buckets.get(format(start(day.getKey(), by), by));
+            bucket[0] += day.getValue()[0];
+            bucket[1] += day.getValue()[1];
+        }
+        return buckets;
+    }
+
+    private static LocalDate toDay(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    // the first day of the bucket that contains the day (weeks start on Monday)
+    private static LocalDate start(LocalDate day, StatisticsService.Interval by) {
+        switch (by) {
+            case DAY:
+                return day;
+            case WEEK:
+                return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case YEAR:
+                return day.withDayOfYear(1);
+            default:
+                return day.withDayOfMonth(1);
+        }
+    }
+
+    private static LocalDate next(LocalDate start, StatisticsService.Interval by) {
+        switch (by) {
+            case DAY:
+                return start.plusDays(1);
+            case WEEK:
+                return start.plusWeeks(1);
+            case YEAR:
+                return start.plusYears(1);
+            default:
+                return start.plusMonths(1);
+        }
+    }
+
+    private static String format(LocalDate start, StatisticsService.Interval by) {
+        switch (by) {
+            case DAY:
+            case WEEK:
+                return DAY.format(start);
+            case YEAR:
+                return YEAR.format(start);
+            default:
+                return MONTH.format(start);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package eu.einfracentral.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.einfracentral.domain.Event;
+import eu.einfracentral.exception.ResourceException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded write-behind queue of event writes.
+ * <p>
+ * Writes are acknowledged as soon as they are queued and appended to a journal file, and are written to the registry
+ * in batches by {@code EventManager}. Writes of the same event are merged while it is queued (e.g. a queued event that
+ * is deleted is never written). When the queue is full, writers wait up to {@code events.queue.timeout} ms and are
+ * then rejected with 503. Queued writes are replayed from the journal on startup, so none are lost on a restart.
+ * <p>
+ * The queue, the journal file and the journal fsync have separate locks (always taken in the order sync, journal,
+ * queue), so reading the queue never waits for the disk. Concurrent writers share a single fsync (group commit).
+ * Journal records carry the sequence number of their merge, and are replayed in that order. The journal is rewritten
+ * with the queued writes only, when it has grown to more than twice their number.
+ */
+@Component
+public class EventWriteQueue {
+
+    private static final Logger logger = LogManager.getLogger(EventWriteQueue.class);
+    private static final int MIN_JOURNAL_REWRITE_LINES = 1000;
+
+    public enum Operation {
+        ADD, UPDATE, DELETE
+    }
+
+    public static class PendingEvent {
+        private long seq;
+        private Operation operation;
+        private Event event;
+        @JsonIgnore
+        private boolean replayed;
+        @JsonIgnore
+        private int attempts;
+
+        public PendingEvent() {
+        }
+
+        PendingEvent(Operation operation, Event event) {
+            this.operation = operation;
+            this.event = event;
+        }
+
+        // the result of merging a write into the queued write of the same event
+        PendingEvent(Operation operation, PendingEvent queued, PendingEvent merged) {
+            this.seq = merged.seq;
+            this.operation = operation;
+            this.event = merged.event;
+            this.replayed = queued.replayed || merged.replayed;
+            this.attempts = queued.attempts;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public void setSeq(long seq) {
+            this.seq = seq;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public void setOperation(Operation operation) {
+            this.operation = operation;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public void setEvent(Event event) {
+            this.event = event;
+        }
+
+        /**
+         * @return whether the write was replayed from the journal, so it may already be applied to the registry.
+         */
+        public boolean isReplayed() {
+            return replayed;
+        }
+
+        /**
+         * @return the number of failed attempts to write it.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    private final int capacity;
+    private final long timeout;
+    private final Path journal;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // guarded by this: event id -> pending write, in queueing order
+    private final Map<String, PendingEvent> pending = new LinkedHashMap<>();
+    // guarded by this: ids of the events being written
+    private final Set<String> writing = new HashSet<>();
+    // guarded by this
+    private long seq = 0;
+
+    private final Object journalLock = new Object();
+    // guarded by journalLock
+    private FileChannel journalChannel;
+    private Writer journalWriter;
+    private long journalLines = 0;
+    private long appended = 0;
+
+    private final Object syncLock = new Object();
+    // the number of appended records that are on disk
+    private final AtomicLong synced = new AtomicLong();
+
+    @Autowired
+    public EventWriteQueue(@Value("${events.queue.capacity:10000}") int capacity,
+                           @Value("${events.queue.timeout:2000}") long timeout,
+                           @Value("${events.queue.journal:}") String journal) {
+        this.capacity = capacity;
+        this.timeout = timeout;
+        if (journal == null || journal.trim().isEmpty()) {
+            this.journal = Paths.get(System.getProperty("java.io.tmpdir"), "eic-registry", "events.journal");
+            logger.warn("'events.queue.journal' is not set, queued event writes are journaled to '{}'. "
+                    + "Set it to a file on persistent storage, or they may be lost on a restart", this.journal);
+        } else {
+            this.journal = Paths.get(journal.trim());
+        }
+    }
+
+    Path getJournal() {
+        return journal;
+    }
+
+    @PostConstruct
+    void replayJournal() throws IOException {
+        if (journal.getParent() != null) {
+            Files.createDirectories(journal.getParent());
+        }
+        synchronized (journalLock) {
+            if (Files.exists(journal)) {
+                List<PendingEvent> records = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        try {
+                            PendingEvent record = mapper.readValue(line, PendingEvent.class);
+                            record.replayed = true;
+                            records.add(record);
+                        } catch (IOException e) {
+                            // an incomplete last line, written while the application was stopped
+                            logger.warn("Skipping unreadable event journal entry: {}", line);
+                        }
+                    }
+                }
+                // records are appended after their merge, so they may be out of order
+                records.sort(Comparator.comparingLong(PendingEvent::getSeq));
+                synchronized (this) {
+                    for (PendingEvent record : records) {
+                        merge(record);
+                        seq = Math.max(seq, record.getSeq());
+                    }
+                }
+                logger.info("Replayed {} queued event writes from '{}'", size(), journal);
+            }
+            rewriteJournal();
+        }
+    }
+
+    public void add(Event event) {
+        enqueue(new PendingEvent(Operation.ADD, event));
+    }
+
+    public void update(Event event) {
+        enqueue(new PendingEvent(Operation.UPDATE, event));
+    }
+
+    public void delete(Event event) {
+        enqueue(new PendingEvent(Operation.DELETE, event));
+    }
+
+    /**
+     * @return the most recently queued event of the user of the given type for the given service, or null.
+     */
+    public synchronized Event getPending(String eventType, String serviceId, String user) {
+        Event latest = null;
+        for (PendingEvent pendingEvent : pending.values()) {
+            Event event = pendingEvent.getEvent();
+            if (pendingEvent.getOperation() != Operation.DELETE && Objects.equals(event.getType(), eventType)
+                    && Objects.equals(event.getService(), serviceId) && Objects.equals(event.getUser(), user)
+                    && (latest == null || event.getInstant() >= latest.getInstant())) {
+                latest = event;
+            }
+        }
+        return latest != null ? copy(latest) : null;
+    }
+
+    /**
+     * @return the queued (not deleted) events of the user.
+     */
+    public synchronized List<Event> getPending(String user) {
+        List<Event> events = new ArrayList<>();
+        for (PendingEvent pendingEvent : pending.values()) {
+            if (pendingEvent.getOperation() != Operation.DELETE && Objects.equals(pendingEvent.getEvent().getUser(), user)) {
+                events.add(copy(pendingEvent.getEvent()));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return a copy of all the queued writes, in queueing order.
+     */
+    public synchronized List<PendingEvent> getPending() {
+        List<PendingEvent> writes = new ArrayList<>(pending.size());
+        for (PendingEvent pendingEvent : pending.values()) {
+            PendingEvent write = new PendingEvent(pendingEvent.getOperation(), pendingEvent, pendingEvent);
+            write.setEvent(copy(pendingEvent.getEvent()));
+            writes.add(write);
+        }
+        return writes;
+    }
+
+    /**
+     * @return the instant of the oldest queued event, or null if the queue is empty.
+     */
+    public synchronized Long getOldestInstant() {
+        Long oldest = null;
+        for (PendingEvent pendingEvent : pending.values()) {
+            long instant = pendingEvent.getEvent().getInstant();
+            if (oldest == null || instant < oldest) {
+                oldest = instant;
+            }
+        }
+        return oldest;
+    }
+
+    public synchronized boolean isPending(String eventId) {
+        return pending.containsKey(eventId);
+    }
+
+    public synchronized boolean isDeleted(String eventId) {
+        PendingEvent pendingEvent = pending.get(eventId);
+        return pendingEvent != null && pendingEvent.getOperation() == Operation.DELETE;
+    }
+
+    /**
+     * @return up to max of the oldest queued writes. They stay queued until they are passed to {@link #done(List)}.
+     */
+    public synchronized List<PendingEvent> peek(int max) {
+        List<PendingEvent> batch = new ArrayList<>(Math.min(max, pending.size()));
+        for (PendingEvent pendingEvent : pending.values()) {
+            if (batch.size() >= max) {
+                break;
+            }
+            batch.add(pendingEvent);
+            writing.add(pendingEvent.getEvent().getId());
+        }
+        return batch;
+    }
+
+    /**
+     * Keeps the writes that failed queued, so that they are retried.
+     */
+    public synchronized void retry(List<PendingEvent> failed) {
+        for (PendingEvent pendingEvent : failed) {
+            String id = pendingEvent.getEvent().getId();
+            writing.remove(id);
+            pendingEvent.attempts++;
+            PendingEvent queued = pending.get(id);
+            if (pendingEvent.getOperation() == Operation.ADD && queued != null && queued != pendingEvent) {
+                // writes merged while the event was being added assumed that it was written
+                if (queued.getOperation() == Operation.DELETE) {
+                    pending.remove(id);
+                } else {
+                    pending.put(id, new PendingEvent(Operation.ADD, pendingEvent, queued));
+                }
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Removes the written events from the queue, unless they were changed while being written.
+     */
+    public void done(List<PendingEvent> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (PendingEvent pendingEvent : written) {
+                writing.remove(pendingEvent.getEvent().getId());
+                pending.remove(pendingEvent.getEvent().getId(), pendingEvent);
+            }
+            notifyAll();
+        }
+        synchronized (journalLock) {
+            if (journalLines > Math.max(MIN_JOURNAL_REWRITE_LINES, 2L * size())) {
+                rewrite();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with the queued writes only. Writes that are no longer queued, e.g. of events that were
+     * deleted by a bulk delete, are not replayed after a restart.
+     */
+    public void checkpoint() {
+        synchronized (journalLock) {
+            rewrite();
+        }
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    private void enqueue(PendingEvent pendingEvent) {
+        pendingEvent.setEvent(copy(pendingEvent.getEvent()));
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (pending.size() >= capacity && !pending.containsKey(pendingEvent.getEvent().getId())) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new ResourceException("Too many pending events, please try again later", HttpStatus.SERVICE_UNAVAILABLE);
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ResourceException(e, HttpStatus.SERVICE_UNAVAILABLE);
+                }
+            }
+            pendingEvent.setSeq(++seq);
+            merge(pendingEvent);
+        }
+        long position;
+        try {
+            String record = mapper.writeValueAsString(pendingEvent);
+            synchronized (journalLock) {
+                journalWriter.write(record);
+                journalWriter.write('\n');
+                journalWriter.flush();
+                journalLines++;
+                position = ++appended;
+            }
+            sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not journal event write", e);
+        }
+    }
+
+    // waits until the record at the position is on disk, forcing the journal for all the records appended so far
+    private void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            while (synced.get() < position) {
+                FileChannel channel;
+                long target;
+                synchronized (journalLock) {
+                    channel = journalChannel;
+                    target = appended;
+                }
+                try {
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // the journal was rewritten, which forced every record appended before it
+                    continue;
+                }
+                synced.accumulateAndGet(target, Math::max);
+            }
+        }
+    }
+
+    // merges a write with the queued write of the same event
+    private void merge(PendingEvent pendingEvent) {
+        String id = pendingEvent.getEvent().getId();
+        PendingEvent queued = pending.get(id);
+        if (queued != null && queued.getOperation() == Operation.ADD && writing.contains(id)) {
+            // the event may already be written, so later writes must be applied to it
+            pending.put(id, new PendingEvent(pendingEvent.getOperation() == Operation.ADD
+                    ? Operation.UPDATE : pendingEvent.getOperation(), queued, pendingEvent));
+        } else if (queued != null && queued.getOperation() == Operation.ADD) {
+            if (pendingEvent.getOperation() == Operation.DELETE) {
+                // never written, nothing to delete
+                pending.remove(id);
+            } else {
+                pending.put(id, new PendingEvent(Operation.ADD, queued, pendingEvent));
+            }
+        } else if (queued != null) {
+            pending.put(id, new PendingEvent(pendingEvent.getOperation(), queued, pendingEvent));
+        } else {
+            pending.put(id, pendingEvent);
+        }
+    }
+
+    // journalLock must be held
+    private void rewrite() {
+        try {
+            rewriteJournal();
+        } catch (IOException e) {
+            logger.error("Could not rewrite the event journal", e);
+        }
+    }
+
+    // journalLock must be held, the queued writes are read under the queue lock
+    private void rewriteJournal() throws IOException {
+        List<PendingEvent> records;
+        synchronized (this) {
+            records = new ArrayList<>(pending.values());
+        }
+        Path rewritten = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+            for (PendingEvent record : records) {
+                writer.write(mapper.writeValueAsString(record));
+                writer.write('\n');
+            }
+            writer.flush();
+            channel.force(false);
+        }
+        Files.move(rewritten, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        if (journalWriter != null) {
+            journalWriter.close();
+        }
+        journalChannel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalWriter = Channels.newWriter(journalChannel, StandardCharsets.UTF_8.newEncoder(), -1);
+        journalLines = records.size();
+        // the records appended so far are merged into the queued writes that were just forced
+        synced.accumulateAndGet(appended, Math::max);
+    }
+
+    // makes the rename of the journal durable, where the file system allows it
+    private void forceDirectory() {
+        Path directory = journal.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not force the journal directory '{}'", directory, e);
+        }
+    }
+
+    private Event copy(Event event) {
+        Event copy = new Event(event.getType(), event.getUser(), event.getService(), event.getValue());
+        copy.setId(event.getId());
+        copy.setInstant(event.getInstant());
+        return copy;
+    }
+}
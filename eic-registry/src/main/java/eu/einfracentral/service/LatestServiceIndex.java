@@ -0,0 +1,139 @@
+package eu.einfracentral.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import eu.openminted.registry.core.domain.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Bounded in-memory pointer from each service id to the id of the resource holding its latest version.
+ * <p>
+ * Entries are written by the service write paths (add/update/delete) and filled on lookup misses. Only the resource
+ * id and version are kept, the resource is fetched by its id on every lookup, and only if it is still the latest
+ * version, so entries made stale by the writes of other nodes are dropped and resolved by the search service.
+ */
+@Component
+public class LatestServiceIndex {
+
+    private final SearchServiceEIC searchServiceEIC;
+    // service id -> resource of the latest version
+    private final Cache<String, Pointer> latest;
+
+    @Autowired
+    public LatestServiceIndex(SearchServiceEIC searchServiceEIC,
+                              @Value("${services.latestIndex.maxSize:20000}") long maxSize) {
+        this.searchServiceEIC = searchServiceEIC;
+        this.latest = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * @param resourceType the resource type of the service.
+     * @param serviceId    the id of the service.
+     * @return the resource of the latest version of the service, or null if it is not indexed.
+     */
+    public Resource get(String resourceType, String serviceId) {
+        return get(resourceType, Collections.singletonList(serviceId)).get(serviceId);
+    }
+
+    /**
+     * Fetches the resources of the indexed services with a single query.
+     *
+     * @param resourceType the resource type of the services.
+     * @param serviceIds   the ids of the services.
+     * @return service id -> resource of its latest version, for the services that are indexed.
+     */
+    public Map<String, Resource> get(String resourceType, Collection<String> serviceIds) {
+        // resource id -> service id
+        Map<String, String> services = new HashMap<>();
+        Map<String, Pointer> pointers = new HashMap<>();
+        for (String serviceId : serviceIds) {
+            Pointer pointer = latest.getIfPresent(serviceId);
+            if (pointer != null) {
+                services.put(pointer.resourceId, serviceId);
+                pointers.put(serviceId, pointer);
+            }
+        }
+        if (services.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Resource> resources = new HashMap<>();
+        for (Resource resource : searchServiceEIC.searchByValues(resourceType, SearchServiceEIC.FIELD_ID,
+                services.keySet(), termQuery("latest", true))) {
+            String serviceId = services.remove(resource.getId());
+            if (serviceId != null) {
+                resources.put(serviceId, resource);
+                if (!Objects.equals(resource.getVersion(), pointers.get(serviceId).version)) {
+                    latest.asMap().replace(serviceId, pointers.get(serviceId), new Pointer(resource));
+                }
+            }
+        }
+        // deleted, or no longer the latest version
+        services.forEach((resourceId, serviceId) -> remove(serviceId, resourceId));
+        return resources;
+    }
+
+    /**
+     * Points the service to the resource, after the resource has been written.
+     */
+    public void put(String serviceId, Resource resource) {
+        if (resource == null || resource.getId() == null) {
+            latest.invalidate(serviceId);
+        } else {
+            latest.put(serviceId, new Pointer(resource));
+        }
+    }
+
+    /**
+     * Points the service to the resource, unless a write has already indexed it.
+     * Used for resources that were read, which may be older than a concurrent write.
+     */
+    public void putIfAbsent(String serviceId, Resource resource) {
+        if (resource != null && resource.getId() != null) {
+            latest.asMap().putIfAbsent(serviceId, new Pointer(resource));
+        }
+    }
+
+    /**
+     * Removes the service, so that its next lookup is resolved by the search service.
+     */
+    public void remove(String serviceId) {
+        latest.invalidate(serviceId);
+    }
+
+    /**
+     * Removes the service if it points to the given resource.
+     */
+    public void remove(String serviceId, String resourceId) {
+        latest.asMap().computeIfPresent(serviceId, (id, pointer) -> pointer.resourceId.equals(resourceId) ? null : pointer);
+    }
+
+    public void clear() {
+        latest.invalidateAll();
+    }
+
+    public long size() {
+        return latest.size();
+    }
+
+    private static class Pointer {
+        private final String resourceId;
+        private final String version;
+
+        Pointer(Resource resource) {
+            this.resourceId = resource.getId();
+            this.version = resource.getVersion();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package eu.einfracentral.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP client of the Matomo API, with pooled connections and strict timeouts.
+ * <p>
+ * After {@code matomo.circuit.failureThreshold} consecutive failures the circuit opens, and requests fail immediately
+ * for {@code matomo.circuit.openSeconds}. After that the circuit is half-open: a single request is let through as
+ * a probe while the rest keep failing immediately. The circuit closes if the probe succeeds, and opens again if it fails.
+ */
+@Component
+public class MatomoClient {
+
+    private static final Logger logger = LogManager.getLogger(MatomoClient.class);
+
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final HttpHeaders headers;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long openUntil = 0;
+    // whether the probe of the half-open circuit is running
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+
+    @Autowired
+    public MatomoClient(@Value("${matomoAuthorizationHeader:}") String authorizationHeader,
+                        @Value("${matomo.http.maxConnections:20}") int maxConnections,
+                        @Value("${matomo.http.connectTimeout:2000}") int connectTimeout,
+                        @Value("${matomo.http.readTimeout:5000}") int readTimeout,
+                        @Value("${matomo.circuit.failureThreshold:5}") int failureThreshold,
+                        @Value("${matomo.circuit.openSeconds:60}") long openSeconds) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        this.headers = new HttpHeaders();
+        this.headers.add("Authorization", authorizationHeader);
+        this.failureThreshold = failureThreshold;
+        this.openMillis = TimeUnit.SECONDS.toMillis(openSeconds);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * @return the parsed response, or null if the request failed or the circuit is open.
+     */
+    public JsonNode get(String url) {
+        return exchange(url, HttpMethod.GET, new HttpEntity<>(headers));
+    }
+
+    /**
+     * Posts the form to the url.
+     *
+     * @return the parsed response, or null if the request failed or the circuit is open.
+     */
+    public JsonNode post(String url, MultiValueMap<String, String> form) {
+        HttpHeaders formHeaders = new HttpHeaders();
+        formHeaders.putAll(headers);
+        formHeaders.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        return exchange(url, HttpMethod.POST, new HttpEntity<>(form, formHeaders));
+    }
+
+    /**
+     * @return whether requests fail immediately, i.e. the circuit is open, or half-open with its probe running.
+     */
+    public boolean isOpen() {
+        return failures.get() >= failureThreshold && (System.currentTimeMillis() < openUntil || probing.get());
+    }
+
+    private JsonNode exchange(String url, HttpMethod method, HttpEntity<?> request) {
+        boolean probe = false;
+        if (failures.get() >= failureThreshold) {
+            // only one request probes the half-open circuit
+            probe = System.currentTimeMillis() >= openUntil && probing.compareAndSet(false, true);
+            if (!probe) {
+                logger.debug("Matomo circuit is open, skipping request");
+                return null;
+            }
+        }
+        try {
+            ResponseEntity<String> responseEntity = restTemplate.exchange(url, method, request, String.class);
+            if (responseEntity.getStatusCode() != HttpStatus.OK || responseEntity.getBody() == null) {
+                logger.error("Could not retrieve analytics from matomo\nResponse Code: {}\nResponse Body: {}",
+                        responseEntity.getStatusCode().toString(), responseEntity.getBody());
+                failed();
+                return null;
+            }
+            JsonNode json = mapper.readTree(responseEntity.getBody());
+            // Matomo reports errors with status 200
+            if ("error".equals(json.path("result").asText())) {
+                logger.error("Could not retrieve analytics from matomo: {}", json.path("message").asText());
+                failed();
+                return null;
+            }
+            failures.set(0);
+            return json;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not retrieve analytics from matomo", e);
+            failed();
+        } finally {
+            if (probe) {
+                probing.set(false);
+            }
+        }
+        return null;
+    }
+
+    private void failed() {
+        if (failures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            logger.warn("Matomo circuit opened for {} ms after {} consecutive failures", openMillis, failures.get());
+        }
+    }
+}
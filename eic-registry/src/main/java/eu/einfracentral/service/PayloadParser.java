@@ -0,0 +1,264 @@
+package eu.einfracentral.service;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.FromStringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializerBase;
+import eu.einfracentral.domain.InfraService;
+import eu.einfracentral.domain.Metadata;
+import eu.einfracentral.domain.ServiceHistory;
+import eu.openminted.registry.core.domain.Resource;
+import eu.openminted.registry.core.service.ParserService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Serializes and deserializes resource payloads in the core format of their resource type.
+ * <p>
+ * The format of each resource type is configured using the property 'registry.format.{resourceType}'
+ * [xml | json] (default: xml). XML payloads are handled by the registry's {@link ParserService}, JSON payloads
+ * are written field by field, mirroring the XML documents. Reads detect the format from the payload itself,
+ * so both formats are accepted while a resource type is being migrated.
+ */
+@Component
+public class PayloadParser {
+
+    private static final Logger logger = LogManager.getLogger(PayloadParser.class);
+    private static final String FORMAT_PROPERTY = "registry.format.";
+
+    private final ParserService parserPool;
+    private final Environment environment;
+    private final ObjectMapper jsonMapper;
+    private final XMLInputFactory xmlInputFactory;
+
+    @Autowired
+    public PayloadParser(ParserService parserPool, Environment environment) throws DatatypeConfigurationException {
+        this.parserPool = parserPool;
+        this.environment = environment;
+        this.jsonMapper = createFieldMapper();
+        this.xmlInputFactory = XMLInputFactory.newInstance();
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    /**
+     * Returns the configured core format of the resource type.
+     *
+     * @param resourceType the name of the resource type
+     * @return {@link ParserService.ParserServiceTypes#JSON} or {@link ParserService.ParserServiceTypes#XML}
+     */
+    public ParserService.ParserServiceTypes getCoreFormat(String resourceType) {
+        String format = environment.getProperty(FORMAT_PROPERTY + resourceType, "xml");
+        return "json".equalsIgnoreCase(format.trim())
+                ? ParserService.ParserServiceTypes.JSON : ParserService.ParserServiceTypes.XML;
+    }
+
+    public String serialize(Object object, ParserService.ParserServiceTypes format) {
+        if (format == ParserService.ParserServiceTypes.JSON) {
+            try {
+                return jsonMapper.writeValueAsString(object);
+            } catch (JsonProcessingException e) {
+                logger.error("Could not serialize object to json", e);
+                return "failed";
+            }
+        }
+        return parserPool.serialize(object, format);
+    }
+
+    public <T> T deserialize(Resource resource, Class<T> clazz) {
+        if (resource == null || resource.getPayload() == null) {
+            return parserPool.deserialize(resource, clazz);
+        }
+        if (isJson(resource.getPayload())) {
+            try {
+                return jsonMapper.readValue(resource.getPayload(), clazz);
+            } catch (IOException e) {
+                logger.error("Could not deserialize json payload of resource '{}'", resource.getId(), e);
+                return null;
+            }
+        }
+        if ("xml".equals(resource.getPayloadFormat())) {
+            return parserPool.deserialize(resource, clazz);
+        }
+        // the parser pool picks the parser by the payload format, which is stale while a type is migrated
+        Resource xmlResource = new Resource();
+        xmlResource.setId(resource.getId());
+        xmlResource.setPayload(resource.getPayload());
+        xmlResource.setPayloadFormat("xml");
+        return parserPool.deserialize(xmlResource, clazz);
+    }
+
+    /**
+     * Reads the metadata and the service version of an {@link InfraService} payload, without deserializing the service.
+     *
+     * @param payload the payload of an {@link InfraService} resource or version.
+     * @return the history entry, or null if the payload does not contain metadata.
+     */
+    public ServiceHistory readServiceHistory(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return isJson(payload) ? readJsonServiceHistory(payload) : readXmlServiceHistory(payload);
+        } catch (IOException | XMLStreamException e) {
+            logger.error("Could not read service history from payload", e);
+            return null;
+        }
+    }
+
+    private ServiceHistory readJsonServiceHistory(String payload) throws IOException {
+        JsonNode root = jsonMapper.readTree(payload);
+        if (!root.hasNonNull("metadata")) {
+            return null;
+        }
+        Metadata metadata = jsonMapper.treeToValue(root.get("metadata"), Metadata.class);
+        JsonNode version = root.path("payload").path("version");
+        return new ServiceHistory(metadata, version.isTextual() ? version.asText() : null, false);
+    }
+
+    // the metadata fields and the service version are grandchildren of the <infraService> element
+    private ServiceHistory readXmlServiceHistory(String payload) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(payload));
+        Metadata metadata = null;
+        String version = null;
+        String parent = null;
+        int depth = 0;
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 2) {
+                        parent = name;
+                        if ("metadata".equals(name)) {
+                            metadata = new Metadata();
+                        }
+                    } else if (depth == 3 && "service".equals(parent) && "version".equals(name)) {
+                        version = reader.getElementText();
+                        depth--;
+                    } else if (depth == 3 && "metadata".equals(parent)) {
+                        setMetadataField(metadata, name, reader.getElementText());
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return metadata != null ? new ServiceHistory(metadata, version, false) : null;
+    }
+
+    private static void setMetadataField(Metadata metadata, String name, String value) {
+        switch (name) {
+            case "registeredBy":
+                metadata.setRegisteredBy(value);
+                break;
+            case "registeredAt":
+                metadata.setRegisteredAt(value);
+                break;
+            case "modifiedBy":
+                metadata.setModifiedBy(value);
+                break;
+            case "modifiedAt":
+                metadata.setModifiedAt(value);
+                break;
+            case "source":
+                metadata.setSource(value);
+                break;
+            case "originalId":
+                metadata.setOriginalId(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Converts an object to a map of its fields, with values in the form they are written to json payloads.
+     *
+     * @param object the object to convert.
+     * @return the field name/value map.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> toFieldMap(Object object) {
+        return jsonMapper.convertValue(object, Map.class);
+    }
+
+    /**
+     * @param payload a resource payload
+     * @return the format of the payload ["json" | "xml"]
+     */
+    public static String formatOf(String payload) {
+        return isJson(payload) ? "json" : "xml";
+    }
+
+    private static boolean isJson(String payload) {
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates an {@link ObjectMapper} reading and writing objects field by field (ignoring getters/setters),
+     * keeping {@link XMLGregorianCalendar} values in their lexical form.
+     *
+     * @return the mapper
+     */
+    public static ObjectMapper createFieldMapper() throws DatatypeConfigurationException {
+        return createFieldMapper(new ObjectMapper());
+    }
+
+    /**
+     * Configures the mapper as in {@link #createFieldMapper()}, e.g. a mapper of another data format.
+     *
+     * @param mapper the mapper to configure
+     * @return the configured mapper
+     */
+    public static ObjectMapper createFieldMapper(ObjectMapper mapper) throws DatatypeConfigurationException {
+        DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(XMLGregorianCalendar.class, new ToStringSerializerBase(XMLGregorianCalendar.class) {
+            @Override
+            public String valueToString(Object value) {
+                return ((XMLGregorianCalendar) value).toXMLFormat();
+            }
+        });
+        module.addDeserializer(XMLGregorianCalendar.class, new FromStringDeserializer<XMLGregorianCalendar>(XMLGregorianCalendar.class) {
+            @Override
+            protected XMLGregorianCalendar _deserialize(String value, DeserializationContext ctxt) {
+                return datatypeFactory.newXMLGregorianCalendar(value);
+            }
+        });
+        return mapper
+                .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(module);
+    }
+}
@@ -147,10 +147,8 @@ public class RegistrationMailService {
 
     @Scheduled(cron = "0 0 12 ? * 2/7") // At 12:00:00pm, every 7 days starting on Monday, every month
     public void sendEmailNotificationsToProviders() {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<ProviderBundle> activeProviders = providerManager.getAll(ff, securityService.getAdminAccess()).getResults();
-        List<ProviderBundle> pendingProviders = pendingProviderManager.getAll(ff, securityService.getAdminAccess()).getResults();
+        List<ProviderBundle> activeProviders = providerManager.getAllResults(new FacetFilter(), securityService.getAdminAccess());
+        List<ProviderBundle> pendingProviders = pendingProviderManager.getAllResults(new FacetFilter());
         List<ProviderBundle> allProviders = Stream.concat(activeProviders.stream(), pendingProviders.stream()).collect(Collectors.toList());
 
         Map<String, Object> root = new HashMap<>();
@@ -174,9 +172,7 @@ public class RegistrationMailService {
 
     @Scheduled(cron = "0 0 12 ? * 2/2") // At 12:00:00pm, every 2 days starting on Monday, every month
     public void sendEmailNotificationsToAdmins() {
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<ProviderBundle> allProviders = providerManager.getAll(ff, null).getResults();
+        List<ProviderBundle> allProviders = providerManager.getAllResults(new FacetFilter(), null);
 
         List<String> providersWaitingForInitialApproval = new ArrayList<>();
         List<String> providersWaitingForSTApproval = new ArrayList<>();
@@ -217,12 +213,10 @@ public class RegistrationMailService {
         List<String> updatedServices = new ArrayList<>();
 
         // Fetch Active/Pending Services and Active/Pending Providers
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        List<ProviderBundle> activeProviders = providerManager.getAll(ff, securityService.getAdminAccess()).getResults();
-        List<ProviderBundle> pendingProviders = pendingProviderManager.getAll(ff, securityService.getAdminAccess()).getResults();
-        List<InfraService> activeServices = infraServiceManager.getAll(ff, securityService.getAdminAccess()).getResults();
-        List<InfraService> pendingServices = pendingServiceManager.getAll(ff, securityService.getAdminAccess()).getResults();
+        List<ProviderBundle> activeProviders = providerManager.getAllResults(new FacetFilter(), securityService.getAdminAccess());
+        List<ProviderBundle> pendingProviders = pendingProviderManager.getAllResults(new FacetFilter());
+        List<InfraService> activeServices = infraServiceManager.getAllResults(new FacetFilter());
+        List<InfraService> pendingServices = pendingServiceManager.getAllResults(new FacetFilter());
         List<ProviderBundle> allProviders = Stream.concat(activeProviders.stream(), pendingProviders.stream()).collect(Collectors.toList());
         List<InfraService> allServices = Stream.concat(activeServices.stream(), pendingServices.stream()).collect(Collectors.toList());
         List<Bundle> allResources = Stream.concat(allProviders.stream(), allServices.stream()).collect(Collectors.toList());
@@ -0,0 +1,128 @@
+package eu.einfracentral.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import eu.einfracentral.domain.InfraService;
+import eu.einfracentral.domain.RichService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materialized view of the parts of a {@link RichService} that are derived from other resources
+ * (vocabulary names, category and domain trees, provider info).
+ * <p>
+ * Entries are keyed by the service id, version and modification stamp, so a changed service is never served from the store.
+ * The store is emptied when the vocabularies, funders or providers it was built from change, and entries expire
+ * after {@code richService.store.ttl} minutes, which bounds the staleness of changes that are not tracked.
+ * Statistics and user specific fields are not stored, they are set on every request.
+ */
+@Component
+public class RichServiceStore {
+
+    private static final Logger logger = LogManager.getLogger(RichServiceStore.class);
+
+    private final Cache<String, RichService> store;
+    private volatile List<Object> sources = Collections.emptyList();
+
+    @Autowired
+    public RichServiceStore(@Value("${richService.store.ttl:30}") long ttlMinutes,
+                            @Value("${richService.store.maxSize:20000}") long maxSize) {
+        this.store = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * Empties the store if any of the given sources is not the same instance as the ones the store was built from.
+     *
+     * @param sources the current (cached) objects the stored services were derived from.
+     */
+    public void checkSources(Object... sources) {
+        List<Object> current = this.sources;
+        boolean same = current.size() == sources.length;
+        for (int i = 0; same && i < sources.length; i++) {
+            same = current.get(i) == sources[i];
+        }
+        if (!same) {
+            synchronized (this) {
+                store.invalidateAll();
+                this.sources = Arrays.asList(sources);
+            }
+            logger.debug("Rich service sources changed, the store was emptied");
+        }
+    }
+
+    /**
+     * @return a new {@link RichService} of the given service with the stored derived fields, or null if it is not stored.
+     */
+    public RichService get(InfraService infraService) {
+        RichService stored = store.getIfPresent(createKey(infraService));
+        if (stored == null) {
+            return null;
+        }
+        RichService richService = new RichService(infraService);
+        richService.setLanguageNames(stored.getLanguageNames());
+        richService.setPlaceNames(stored.getPlaceNames());
+        richService.setTrlName(stored.getTrlName());
+        richService.setPhaseName(stored.getPhaseName());
+        richService.setTargetUsersNames(stored.getTargetUsersNames());
+        richService.setAccessTypeNames(stored.getAccessTypeNames());
+        richService.setAccessModeNames(stored.getAccessModeNames());
+        richService.setFundedByNames(stored.getFundedByNames());
+        richService.setOrderTypeName(stored.getOrderTypeName());
+        richService.setCategories(stored.getCategories());
+        richService.setDomains(stored.getDomains());
+        richService.setProviderInfo(stored.getProviderInfo());
+        return richService;
+    }
+
+    /**
+     * Stores the derived fields of the rich service. Must be called before its statistics or user fields are set.
+     */
+    public void put(InfraService infraService, RichService richService) {
+        RichService stored = new RichService();
+        stored.setLanguageNames(unmodifiable(richService.getLanguageNames()));
+        stored.setPlaceNames(unmodifiable(richService.getPlaceNames()));
+        stored.setTrlName(richService.getTrlName());
+        stored.setPhaseName(richService.getPhaseName());
+        stored.setTargetUsersNames(unmodifiable(richService.getTargetUsersNames()));
+        stored.setAccessTypeNames(unmodifiable(richService.getAccessTypeNames()));
+        stored.setAccessModeNames(unmodifiable(richService.getAccessModeNames()));
+        stored.setFundedByNames(unmodifiable(richService.getFundedByNames()));
+        stored.setOrderTypeName(richService.getOrderTypeName());
+        stored.setCategories(unmodifiable(richService.getCategories()));
+        stored.setDomains(unmodifiable(richService.getDomains()));
+        stored.setProviderInfo(unmodifiable(richService.getProviderInfo()));
+        store.put(createKey(infraService), stored);
+    }
+
+    public void invalidateAll() {
+        store.invalidateAll();
+    }
+
+    public long size() {
+        return store.size();
+    }
+
+    private static <T> List<T> unmodifiable(List<T> list) {
+        return list != null ? Collections.unmodifiableList(new ArrayList<>(list)) : null;
+    }
+
+    private static String createKey(InfraService infraService) {
+        return String.join(":", infraService.getService().getId(),
+                String.valueOf(infraService.getService().getVersion()),
+                infraService.getMetadata() != null ? String.valueOf(infraService.getMetadata().getModifiedAt()) : "",
+                String.valueOf(infraService.isActive()), String.valueOf(infraService.isLatest()),
+                String.valueOf(infraService.getStatus()));
+    }
+}
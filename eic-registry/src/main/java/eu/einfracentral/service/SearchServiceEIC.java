@@ -1,68 +1,519 @@
 package eu.einfracentral.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import eu.einfracentral.utils.FacetFilterUtils;
+import eu.openminted.registry.core.configuration.ElasticConfiguration;
+import eu.openminted.registry.core.domain.Facet;
 import eu.openminted.registry.core.domain.FacetFilter;
+import eu.openminted.registry.core.domain.Paging;
+import eu.openminted.registry.core.domain.Resource;
+import eu.openminted.registry.core.domain.ResourceType;
+import eu.openminted.registry.core.service.ResourceTypeService;
 import eu.openminted.registry.core.service.SearchService;
 import eu.openminted.registry.core.service.SearchServiceImpl;
+import eu.openminted.registry.core.service.ServiceException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.indices.GetFieldMappingsRequest;
+import org.elasticsearch.client.indices.GetFieldMappingsResponse;
+import org.elasticsearch.client.indices.PutIndexTemplateRequest;
+import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.DisMaxQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.elasticsearch.index.query.QueryBuilders.regexpQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 
 @Service
 @PropertySource({"classpath:application.properties", "classpath:registry.properties"})
 public class SearchServiceEIC extends SearchServiceImpl implements SearchService {
 
     private static final Logger logger = LogManager.getLogger(SearchServiceEIC.class);
+    private static final String KEYWORD_SEARCH_TEMPLATE = "elastic/keywordSearchTemplate.json";
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final int TERMS_CHUNK_SIZE = 1000;
+
+    // fields of the documents indexed by registry-core
+    static final String FIELD_ID = "id";
+    static final String FIELD_PAYLOAD = "payload";
+    static final String FIELD_PAYLOAD_FORMAT = "payloadFormat";
+    static final String FIELD_VERSION = "version";
+    static final String FIELD_CREATION_DATE = "creation_date";
+    static final String FIELD_MODIFICATION_DATE = "modification_date";
+
+    // index/field -> whether the field has analysed subfields
+    private Cache<String, Boolean> analysedFields;
+
+    @Autowired
+    private ElasticConfiguration elastic;
+
+    @Autowired
+    private ResourceTypeService resourceTypeService;
+
+    @Value("${elastic.search.keywordMode:regexp}")
+    private String defaultKeywordMode;
+
+    @Value("${elastic.aggregation.bucketSize:1000}")
+    private int bucketSize;
+
+    @Value("${elastic.cursor.pageSize:1000}")
+    private int cursorPageSize;
+
+    @Value("${elastic.search.mappingCacheSeconds:600}")
+    private long mappingCacheSeconds;
 
     public SearchServiceEIC() {
         super();
     }
 
+    /**
+     * Keyword matching strategies that can be selected per request using the
+     * {@link FacetFilterUtils#SEARCH_MODE} filter.
+     */
+    public enum KeywordMode {
+        // substring matching using one regular expression per character of the keyword
+        REGEXP("regexp"),
+        // typo tolerant matching on the analysed (edge n-gram, trigram, text) subfields of the search fields
+        NGRAM("ngram");
+
+        private final String mode;
+
+        KeywordMode(final String mode) {
+            this.mode = mode;
+        }
+
+        public String getKey() {
+            return mode;
+        }
+
+        public static KeywordMode fromString(String s) {
+            return Arrays.stream(KeywordMode.values())
+                    .filter(v -> v.mode.equalsIgnoreCase(s))
+                    .findFirst()
+                    .orElse(REGEXP);
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        analysedFields = CacheBuilder.newBuilder()
+                .expireAfterWrite(mappingCacheSeconds, TimeUnit.SECONDS)
+                .maximumSize(1000)
+                .build();
+        putKeywordSearchTemplate();
+    }
+
+    private void putKeywordSearchTemplate() {
+        try (InputStream template = getClass().getClassLoader().getResourceAsStream(KEYWORD_SEARCH_TEMPLATE)) {
+            if (template == null) {
+                logger.warn("Could not find '{}' in classpath", KEYWORD_SEARCH_TEMPLATE);
+                return;
+            }
+            PutIndexTemplateRequest request = new PutIndexTemplateRequest("eic_keyword_search");
+            request.source(StreamUtils.copyToString(template, StandardCharsets.UTF_8), XContentType.JSON);
+            elastic.client().indices().putTemplate(request, RequestOptions.DEFAULT);
+            logger.info("Installed Elasticsearch template '{}'", KEYWORD_SEARCH_TEMPLATE);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not install Elasticsearch template '{}'. Keyword search will fall back to '{}' mode",
+                    KEYWORD_SEARCH_TEMPLATE, KeywordMode.REGEXP.getKey(), e);
+        }
+    }
+
     @Override
     public BoolQueryBuilder createQueryBuilder(FacetFilter filter) {
-        BoolQueryBuilder qBuilder = new BoolQueryBuilder();
-
         // retrieve filters from FacetFilter object
+        return createQueryBuilder(filter, FacetFilterUtils.getFacetFilterFilters(filter));
+    }
+
+    /**
+     * Searches resources and computes their facets in a single request. Filters on facet fields are applied
+     * as a post filter, and every facet is aggregated using all the filters except its own, so the
+     * counts of the selected facets are not restricted to their selected values.
+     *
+     * @param filter the {@link FacetFilter}, its browseBy fields are used as facets.
+     * @return the matching resources and their facets.
+     */
+    public Paging<Resource> searchWithDisjunctiveFacets(FacetFilter filter) {
         Map<String, List<Object>> allFilters = FacetFilterUtils.getFacetFilterFilters(filter);
+        List<String> browseBy = filter.getBrowseBy() != null ? filter.getBrowseBy() : Collections.emptyList();
+
+        // move facet filters out of the main query
+        Map<String, QueryBuilder> facetFilters = new LinkedHashMap<>();
+        for (String field : browseBy) {
+            List<Object> values = allFilters.remove(field);
+            if (values != null && !values.isEmpty()) {
+                facetFilters.put(field, termsQuery(field, values));
+            }
+        }
+        BoolQueryBuilder postFilter = QueryBuilders.boolQuery();
+        facetFilters.values().forEach(postFilter::filter);
+
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(createQueryBuilder(filter, allFilters))
+                .postFilter(postFilter)
+                .from(filter.getFrom())
+                .size(filter.getQuantity())
+                .trackTotalHits(true);
+        addSort(searchSourceBuilder, filter.getOrderBy());
+
+        for (String field : browseBy) {
+            BoolQueryBuilder otherFacetFilters = QueryBuilders.boolQuery();
+            facetFilters.entrySet()
+                    .stream()
+                    .filter(entry -> !entry.getKey().equals(field))
+                    .forEach(entry -> otherFacetFilters.filter(entry.getValue()));
+            searchSourceBuilder.aggregation(AggregationBuilders.filter(field, otherFacetFilters)
+                    .subAggregation(AggregationBuilders.terms(field).field(field).size(bucketSize)));
+        }
+
+        SearchResponse response = search(new SearchRequest(filter.getResourceType()).source(searchSourceBuilder));
+
+        List<Resource> results = new ArrayList<>();
+        for (SearchHit hit : response.getHits().getHits()) {
+            results.add(toResource(hit));
+        }
+        List<Facet> facets = new ArrayList<>();
+        for (String field : browseBy) {
+            Filter facetAggregation = response.getAggregations().get(field);
+            Terms terms = facetAggregation.getAggregations().get(field);
+            List<eu.openminted.registry.core.domain.Value> values = new ArrayList<>();
+            for (Terms.Bucket bucket : terms.getBuckets()) {
+                eu.openminted.registry.core.domain.Value value = new eu.openminted.registry.core.domain.Value();
+                value.setValue(bucket.getKeyAsString());
+                value.setCount((int) bucket.getDocCount());
+                values.add(value);
+            }
+            Facet facet = new Facet();
+            facet.setField(field);
+            facet.setValues(values);
+            facets.add(facet);
+        }
+        int total = (int) response.getHits().getTotalHits().value;
+        return new Paging<>(total, filter.getFrom(), filter.getFrom() + results.size(), results, facets);
+    }
+
+    /**
+     * Returns an iterator over all the resources matching the filter, retrieved in pages of the configured size.
+     * The filter's from/quantity are ignored, results are fetched using a scroll context, so they are not
+     * limited by the index's max result window.
+     *
+     * @param filter the {@link FacetFilter}, its orderBy is respected.
+     * @param mapper converts each {@link Resource} to the returned type.
+     * @return an iterator over pages of results.
+     */
+    public <T> Iterator<List<T>> cursor(FacetFilter filter, Function<Resource, T> mapper) {
+        return cursor(filter, cursorPageSize, mapper);
+    }
+
+    /**
+     * Returns an iterator over all the resources matching the filter, retrieved in pages of the given size.
+     *
+     * @param filter   the {@link FacetFilter}, its orderBy is respected.
+     * @param pageSize the number of results of each page.
+     * @param mapper   converts each {@link Resource} to the returned type.
+     * @return an iterator over pages of results.
+     */
+    public <T> Iterator<List<T>> cursor(FacetFilter filter, int pageSize, Function<Resource, T> mapper) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(createQueryBuilder(filter))
+                .size(pageSize);
+        if (filter.getOrderBy() == null || filter.getOrderBy().isEmpty()) {
+            searchSourceBuilder.sort("_doc");
+        } else {
+            addSort(searchSourceBuilder, filter.getOrderBy());
+        }
+        SearchRequest request = new SearchRequest(filter.getResourceType())
+                .source(searchSourceBuilder)
+                .scroll(SCROLL_KEEP_ALIVE);
+        return new ScrollCursor<>(request, hit -> mapper.apply(toResource(hit)));
+    }
+
+    /**
+     * Returns an iterator over all the resources matching the query, in no particular order, retrieved in pages
+     * of the configured size using a scroll context.
+     *
+     * @param resourceType the resource type (index) to search.
+     * @param query        the query.
+     * @param mapper       converts each {@link Resource} to the returned type.
+     * @return an iterator over pages of results.
+     */
+    public <T> Iterator<List<T>> cursor(String resourceType, QueryBuilder query, Function<Resource, T> mapper) {
+        SearchRequest request = new SearchRequest(resourceType)
+                .source(new SearchSourceBuilder().query(query).sort("_doc").size(cursorPageSize))
+                .scroll(SCROLL_KEEP_ALIVE);
+        return new ScrollCursor<>(request, hit -> mapper.apply(toResource(hit)));
+    }
+
+    /**
+     * Retrieves all the resources matching the filter, page by page, using {@link #cursor(FacetFilter, Function)}.
+     *
+     * @param filter the {@link FacetFilter}
+     * @param mapper converts each {@link Resource} to the returned type.
+     * @return all the results.
+     */
+    public <T> List<T> scrollAll(FacetFilter filter, Function<Resource, T> mapper) {
+        List<T> results = new ArrayList<>();
+        cursor(filter, mapper).forEachRemaining(results::addAll);
+        return results;
+    }
+
+    /**
+     * Returns the first resource matching the query, using a single size-1 request.
+     *
+     * @param resourceType the resource type (index) to search.
+     * @param query        the query.
+     * @param sortField    the field to sort by.
+     * @param order        the sort order.
+     * @return the first {@link Resource} or null if there are no matches.
+     */
+    public Resource searchFirst(String resourceType, QueryBuilder query, String sortField, SortOrder order) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(query)
+                .sort(sortField, order)
+                .size(1);
+        SearchHit[] hits = search(new SearchRequest(resourceType).source(searchSourceBuilder)).getHits().getHits();
+        return hits.length == 0 ? null : toResource(hits[0]);
+    }
+
+    /**
+     * Returns all the resources whose field has one of the given values, using one terms query for every
+     * {@value TERMS_CHUNK_SIZE} values. Results are not ordered.
+     *
+     * @param resourceType the resource type (index) to search.
+     * @param field        the field to match.
+     * @param values       the values of the field.
+     * @param filter       an additional filter, may be null.
+     * @return the matching resources.
+     */
+    public List<Resource> searchByValues(String resourceType, String field, Collection<String> values, QueryBuilder filter) {
+        List<Resource> results = new ArrayList<>();
+        scrollByValues(resourceType, field, values, filter, this::toResource).forEach(results::addAll);
+        return results;
+    }
+
+    /**
+     * Returns the resources whose field has one of the given values, keyed by the indexed value of the field.
+     * If several resources have the same value, the first one found is returned.
+     *
+     * @param resourceType the resource type (index) to search.
+     * @param field        a single valued field to match.
+     * @param values       the values of the field.
+     * @return value -> {@link Resource}, for the values that were found.
+     */
+    public Map<String, Resource> searchByValuesKeyed(String resourceType, String field, Collection<String> values) {
+        Map<String, Resource> results = new HashMap<>();
+        scrollByValues(resourceType, field, values, null, hit -> hit).forEach(page -> {
+            for (SearchHit hit : page) {
+                Object value = hit.getSourceAsMap().get(field);
+                if (value != null) {
+                    results.putIfAbsent(value.toString(), toResource(hit));
+                }
+            }
+        });
+        return results;
+    }
+
+    // one cursor for every TERMS_CHUNK_SIZE values
+    private <T> Iterable<List<T>> scrollByValues(String resourceType, String field, Collection<String> values,
+                                                 QueryBuilder filter, Function<SearchHit, T> mapper) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(values));
+        List<List<T>> pages = new ArrayList<>();
+        for (int i = 0; i < distinct.size(); i += TERMS_CHUNK_SIZE) {
+            BoolQueryBuilder query = QueryBuilders.boolQuery()
+                    .filter(termsQuery(field, distinct.subList(i, Math.min(i + TERMS_CHUNK_SIZE, distinct.size()))));
+            if (filter != null) {
+                query.filter(filter);
+            }
+            SearchRequest request = new SearchRequest(resourceType)
+                    .source(new SearchSourceBuilder().query(query).sort("_doc").size(cursorPageSize))
+                    .scroll(SCROLL_KEEP_ALIVE);
+            new ScrollCursor<>(request, mapper).forEachRemaining(pages::add);
+        }
+        return pages;
+    }
+
+    private class ScrollCursor<T> implements Iterator<List<T>> {
+
+        private final SearchRequest request;
+        private final Function<SearchHit, T> mapper;
+        private String scrollId = null;
+        private List<T> page = null;
+        private boolean exhausted = false;
+
+        ScrollCursor(SearchRequest request, Function<SearchHit, T> mapper) {
+            this.request = request;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (page == null && !exhausted) {
+                fetch();
+            }
+            return page != null;
+        }
+
+        @Override
+        public List<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<T> results = page;
+            page = null;
+            return results;
+        }
+
+        private void fetch() {
+            SearchHit[] hits;
+            try {
+                SearchResponse response = scrollId == null
+                        ? elastic.client().search(request, RequestOptions.DEFAULT)
+                        : elastic.client().scroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+                hits = response.getHits().getHits();
+            } catch (IOException e) {
+                close();
+                throw new ServiceException(e.getMessage());
+            }
+            if (hits.length == 0) {
+                close();
+                return;
+            }
+            page = new ArrayList<>(hits.length);
+            for (SearchHit hit : hits) {
+                page.add(mapper.apply(hit));
+            }
+            if (hits.length < request.source().size()) {
+                close();
+            }
+        }
+
+        private void close() {
+            exhausted = true;
+            if (scrollId != null) {
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                try {
+                    elastic.client().clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+                } catch (IOException e) {
+                    logger.warn("Could not clear scroll context", e);
+                }
+                scrollId = null;
+            }
+        }
+    }
+
+    private SearchResponse search(SearchRequest request) {
+        try {
+            return elastic.client().search(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addSort(SearchSourceBuilder searchSourceBuilder, Map<String, Object> orderBy) {
+        if (orderBy == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> order : orderBy.entrySet()) {
+            Object direction = ((Map<String, Object>) order.getValue()).get("order");
+            searchSourceBuilder.sort(order.getKey(), direction != null
+                    ? SortOrder.fromString(direction.toString()) : SortOrder.ASC);
+        }
+    }
+
+    private Resource toResource(SearchHit hit) {
+        // registry-core names each index after its resource type
+        ResourceType resourceType = resourceTypeService.getResourceType(hit.getIndex());
+        if (resourceType == null) {
+            logger.debug("Could not find the resource type of index '{}'", hit.getIndex());
+        }
+        return toResource(hit.getId(), hit.getSourceAsMap(), resourceType);
+    }
+
+    /**
+     * Maps the source of a hit to a {@link Resource}, using the fields of the documents that registry-core indexes.
+     *
+     * @param hitId        the id of the document, used if the source has no id.
+     * @param source       the source of the document.
+     * @param resourceType the resource type of the index, may be null.
+     * @return the resource.
+     */
+    static Resource toResource(String hitId, Map<String, Object> source, ResourceType resourceType) {
+        Resource resource = new Resource();
+        resource.setId(source.get(FIELD_ID) != null ? source.get(FIELD_ID).toString() : hitId);
+        resource.setResourceType(resourceType);
+        resource.setPayload((String) source.get(FIELD_PAYLOAD));
+        resource.setPayloadFormat((String) source.get(FIELD_PAYLOAD_FORMAT));
+        resource.setVersion((String) source.get(FIELD_VERSION));
+        resource.setCreationDate(toDate(source.get(FIELD_CREATION_DATE)));
+        resource.setModificationDate(toDate(source.get(FIELD_MODIFICATION_DATE)));
+        return resource;
+    }
+
+    private static Date toDate(Object value) {
+        if (value instanceof Number) {
+            return new Date(((Number) value).longValue());
+        } else if (value != null) {
+            try {
+                return new Date(Long.parseLong(value.toString()));
+            } catch (NumberFormatException e) {
+                logger.debug("Could not parse date '{}'", value);
+            }
+        }
+        return null;
+    }
+
+    private BoolQueryBuilder createQueryBuilder(FacetFilter filter, Map<String, List<Object>> allFilters) {
+        BoolQueryBuilder qBuilder = new BoolQueryBuilder();
 
         List<Object> searchFields = allFilters.remove(FacetFilterUtils.SEARCH_FIELDS);
         if (searchFields == null || searchFields.isEmpty()) {
             searchFields = Collections.singletonList(FacetFilterUtils.SEARCHABLE_AREA);
         }
+        List<Object> searchMode = allFilters.remove(FacetFilterUtils.SEARCH_MODE);
+        KeywordMode keywordMode = KeywordMode.fromString(searchMode == null || searchMode.isEmpty()
+                ? defaultKeywordMode : searchMode.get(0).toString());
 
         if (filter.getKeyword() != null && !filter.getKeyword().equals("")) {
-            // make first char of keyword universal
-            String keyword = filter.getKeyword();
-            List<String> allPossibleInputs = new ArrayList<>();
-            for (int i = 0; i < keyword.length(); i++) {
-                String nextLetter = String.valueOf(keyword.charAt(i));
-                String output = keyword.replace(nextLetter, "[^\\s\\p{L}\\p{N}]");
-                allPossibleInputs.add(output);
-            }
-
-            // create regexp disMaxQuery
-            DisMaxQueryBuilder qb = QueryBuilders.disMaxQuery();
-            for (Object field : searchFields) {
-//                qb.add(regexpQuery((String) field, ".*(" + String.join("|", allPossibleInputs) + ").*"));
-                for (String possibleInput : allPossibleInputs) {
-                    qb.add(regexpQuery((String) field, ".*" + possibleInput + ".*"));
-                }
+            if (keywordMode == KeywordMode.NGRAM && hasAnalysedFields(filter.getResourceType(), searchFields)) {
+                qBuilder.must(createNgramQuery(filter.getKeyword(), searchFields));
+            } else {
+                qBuilder.must(createRegexpQuery(filter.getKeyword(), searchFields));
             }
-            qb.boost(2f);
-            qb.tieBreaker(0.7f);
-            qBuilder.must(qb);
         } else {
             qBuilder.must(QueryBuilders.matchAllQuery());
         }
@@ -80,6 +531,82 @@ public class SearchServiceEIC extends SearchServiceImpl implements SearchService
         return qBuilder;
     }
 
+    private DisMaxQueryBuilder createRegexpQuery(String keyword, List<Object> searchFields) {
+        // make first char of keyword universal
+        List<String> allPossibleInputs = new ArrayList<>();
+        for (int i = 0; i < keyword.length(); i++) {
+            String nextLetter = String.valueOf(keyword.charAt(i));
+            String output = keyword.replace(nextLetter, "[^\\s\\p{L}\\p{N}]");
+            allPossibleInputs.add(output);
+        }
+
+        // create regexp disMaxQuery
+        DisMaxQueryBuilder qb = QueryBuilders.disMaxQuery();
+        for (Object field : searchFields) {
+            for (String possibleInput : allPossibleInputs) {
+                qb.add(regexpQuery((String) field, ".*" + possibleInput + ".*"));
+            }
+        }
+        qb.boost(2f);
+        qb.tieBreaker(0.7f);
+        return qb;
+    }
+
+    private DisMaxQueryBuilder createNgramQuery(String keyword, List<Object> searchFields) {
+        DisMaxQueryBuilder qb = QueryBuilders.disMaxQuery();
+        for (Object field : searchFields) {
+            // words typed so far (prefix matching)
+            qb.add(matchQuery(field + ".edge", keyword).operator(Operator.AND).boost(3f));
+            // whole words with typos
+            qb.add(matchQuery(field + ".text", keyword).fuzziness(Fuzziness.AUTO).prefixLength(1)
+                    .operator(Operator.AND).boost(2f));
+            // parts of words (substring matching, equivalent of the regexp mode)
+            qb.add(matchQuery(field + ".ngram", keyword).minimumShouldMatch("75%"));
+        }
+        qb.boost(2f);
+        qb.tieBreaker(0.7f);
+        return qb;
+    }
+
+    /**
+     * Checks whether the analysed subfields exist in the index mapping. The result of each field is cached for
+     * 'elastic.search.mappingCacheSeconds', so indices recreated or reindexed with the keyword search template are
+     * picked up without a restart.
+     */
+    private boolean hasAnalysedFields(String index, List<Object> searchFields) {
+        if (index == null) {
+            return false;
+        }
+        for (Object field : searchFields) {
+            String key = index + "/" + field;
+            Boolean analysed = analysedFields.getIfPresent(key);
+            if (analysed != null) {
+                if (!analysed) {
+                    return false;
+                }
+                continue;
+            }
+            try {
+                GetFieldMappingsRequest request = new GetFieldMappingsRequest()
+                        .indices(index)
+                        .fields(field + ".ngram", field + ".edge", field + ".text");
+                GetFieldMappingsResponse response = elastic.client().indices()
+                        .getFieldMapping(request, RequestOptions.DEFAULT);
+                Map<String, GetFieldMappingsResponse.FieldMappingMetaData> mappings = response.mappings().get(index);
+                analysed = mappings != null && mappings.size() == 3;
+                analysedFields.put(key, analysed);
+                if (!analysed) {
+                    logger.debug("Index '{}' has no analysed subfields for '{}'", index, field);
+                    return false;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not retrieve mapping of field '{}' in index '{}'", field, index, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
     private DisMaxQueryBuilder createDisMaxQuery(String key, List<Object> filters) {
         DisMaxQueryBuilder qb = QueryBuilders.disMaxQuery();
         for (Object f : filters) {
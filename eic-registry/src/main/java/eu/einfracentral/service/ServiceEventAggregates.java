@@ -0,0 +1,356 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.domain.Event;
+import eu.einfracentral.registry.service.EventService;
+import eu.einfracentral.utils.FacetFilterUtils;
+import eu.openminted.registry.core.domain.FacetFilter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Per event type and service aggregates of the latest event value of each user (count and sum).
+ * <p>
+ * Aggregates are loaded from the event index in the background when the application starts, and updated
+ * incrementally by the event write paths, so reading the rating or favourites of a service does not scan any events.
+ * Until the first load completes, reads return zeros. Writes made while the aggregates are (re)loaded are recorded
+ * and applied to the loaded aggregates, so neither reads nor writes wait for a load.
+ */
+@Component
+public class ServiceEventAggregates {
+
+    private static final Logger logger = LogManager.getLogger(ServiceEventAggregates.class);
+    private static final long LOAD_RETRY_SECONDS = 60;
+
+    private final EventService eventService;
+    private final EventWriteQueue eventWriteQueue;
+
+    // event type -> service id -> aggregate
+    private volatile Map<String, Map<String, Aggregate>> aggregates = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+    // writes made during a load, applied to the loaded aggregates, null when no load is running
+    private List<Consumer<Map<String, Map<String, Aggregate>>>> loadingWrites = null;
+    private final Object loadLock = new Object();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-aggregates-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public ServiceEventAggregates(@Lazy EventService eventService, EventWriteQueue eventWriteQueue) {
+        this.eventService = eventService;
+        this.eventWriteQueue = eventWriteQueue;
+    }
+
+    /**
+     * Loads the aggregates in the background once the application context is ready, retrying until it succeeds.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void load() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        loader.execute(() -> {
+            while (!loaded && !Thread.currentThread().isInterrupted()) {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    logger.error("Could not load the event aggregates, retrying in {} seconds", LOAD_RETRY_SECONDS, e);
+                    try {
+                        TimeUnit.SECONDS.sleep(LOAD_RETRY_SECONDS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * @return the number of users with an event of the given type on the service.
+     */
+    public int getCount(String eventType, String serviceId) {
+        Aggregate aggregate = getAggregate(eventType, serviceId);
+        return aggregate != null ? aggregate.getCount() : 0;
+    }
+
+    /**
+     * @return the sum of the latest event values of the users on the service.
+     */
+    public double getSum(String eventType, String serviceId) {
+        Aggregate aggregate = getAggregate(eventType, serviceId);
+        return aggregate != null ? aggregate.getSum() : 0;
+    }
+
+    /**
+     * @return the latest event value of each user, grouped by service.
+     */
+    public Map<String, List<Float>> getValues(String eventType) {
+        Map<String, List<Float>> values = new HashMap<>();
+        for (Map.Entry<String, Aggregate> entry : aggregates.getOrDefault(eventType, new HashMap<>()).entrySet()) {
+            List<Float> serviceValues = entry.getValue().getValues();
+            if (!serviceValues.isEmpty()) {
+                values.put(entry.getKey(), serviceValues);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Accounts for a created or updated event. Events older than the user's latest one are ignored.
+     */
+    public void add(Event event) {
+        write(map -> apply(map, event));
+    }
+
+    /**
+     * Accounts for a deleted event. If it was the latest event of its user, the user's previous event takes its place.
+     * The previous event is looked up before the aggregates are locked.
+     */
+    public void remove(Event event) {
+        if (event.getType() == null || event.getService() == null || event.getUser() == null) {
+            return;
+        }
+        Event previous = isLatest(event) ? findPrevious(event) : null;
+        write(map -> {
+            Aggregate aggregate = map.getOrDefault(event.getType(), new HashMap<>()).get(event.getService());
+            if (aggregate != null && aggregate.remove(event) && previous != null) {
+                aggregate.put(previous);
+            }
+        });
+    }
+
+    /**
+     * Discards the events of the user.
+     */
+    public void removeUser(String user) {
+        if (user == null) {
+            return;
+        }
+        write(map -> {
+            for (Map<String, Aggregate> serviceAggregates : map.values()) {
+                for (Aggregate aggregate : serviceAggregates.values()) {
+                    aggregate.removeUser(user);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the aggregates in the background, after the running rebuild if there is one.
+     * Requests made before a queued rebuild starts are served by that rebuild.
+     */
+    public void rebuildLater() {
+        if (!rebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        loader.execute(() -> {
+            rebuildQueued.set(false);
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                logger.error("Could not rebuild the event aggregates", e);
+            }
+        });
+    }
+
+    /**
+     * Discards the aggregates and loads them again from the event index.
+     * The current aggregates are served, and kept up to date, until the load completes.
+     */
+    public void rebuild() {
+        synchronized (loadLock) {
+            synchronized (this) {
+                loadingWrites = new ArrayList<>();
+            }
+            Map<String, Map<String, Aggregate>> rebuilt = new ConcurrentHashMap<>();
+            try {
+                for (Event.UserActionType type : Event.UserActionType.values()) {
+                    FacetFilter ff = new FacetFilter();
+                    ff.addFilter("type", type.getKey());
+                    for (Event event : eventService.getAllResults(ff)) {
+                        apply(rebuilt, event);
+                    }
+                }
+                // queued writes are not in the event index yet
+                for (EventWriteQueue.PendingEvent pendingEvent : eventWriteQueue.getPending()) {
+                    Event event = pendingEvent.getEvent();
+                    if (pendingEvent.getOperation() != EventWriteQueue.Operation.DELETE) {
+                        apply(rebuilt, event);
+                    } else {
+                        Aggregate aggregate = rebuilt.getOrDefault(event.getType(), new HashMap<>()).get(event.getService());
+                        if (aggregate != null) {
+                            aggregate.remove(event);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    loadingWrites = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // the writes made during the load may or may not be part of it, applying them again is harmless
+                loadingWrites.forEach(write -> write.accept(rebuilt));
+                loadingWrites = null;
+                aggregates = rebuilt;
+                loaded = true;
+            }
+            logger.info("Aggregated the events of {} services", rebuilt.values().stream().mapToInt(Map::size).sum());
+        }
+    }
+
+    // applies the write to the current aggregates, and records it while a load is running
+    private synchronized void write(Consumer<Map<String, Map<String, Aggregate>>> write) {
+        if (loaded) {
+            write.accept(aggregates);
+        }
+        if (loadingWrites != null) {
+            loadingWrites.add(write);
+        }
+    }
+
+    // whether the event may be the latest event of its user, always while a load is running
+    private boolean isLatest(Event event) {
+        synchronized (this) {
+            if (!loaded || loadingWrites != null) {
+                return true;
+            }
+        }
+        Aggregate aggregate = getAggregate(event.getType(), event.getService());
+        return aggregate != null && aggregate.isLatest(event);
+    }
+
+    // the latest event of the user before the given one, or null
+    private Event findPrevious(Event event) {
+        FacetFilter ff = new FacetFilter();
+        ff.addFilter("type", event.getType());
+        ff.addFilter("service", event.getService());
+        ff.addFilter("event_user", event.getUser());
+        ff.setOrderBy(FacetFilterUtils.createOrderBy("instant", "desc"));
+        for (Event previous : eventService.getAllResults(ff)) {
+            // the deleted event may still be visible to the search service, or queued for deletion
+            if (!previous.getId().equals(event.getId()) && !eventWriteQueue.isDeleted(previous.getId())) {
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    private Aggregate getAggregate(String eventType, String serviceId) {
+        Map<String, Aggregate> serviceAggregates = aggregates.get(eventType);
+        return serviceAggregates != null ? serviceAggregates.get(serviceId) : null;
+    }
+
+    private static void apply(Map<String, Map<String, Aggregate>> aggregates, Event event) {
+        if (event.getType() == null || event.getService() == null || event.getUser() == null) {
+            return;
+        }
+        aggregates.computeIfAbsent(event.getType(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(event.getService(), k -> new Aggregate())
+                .put(event);
+    }
+
+    private static class Aggregate {
+
+        // user -> latest event
+        private final Map<String, UserEvent> userEvents = new HashMap<>();
+        private double sum = 0;
+
+        synchronized void put(Event event) {
+            float value;
+            try {
+                value = Float.parseFloat(event.getValue());
+            } catch (NullPointerException | NumberFormatException e) {
+                logger.warn("Ignoring event with invalid value: {}", event);
+                return;
+            }
+            UserEvent existing = userEvents.get(event.getUser());
+            if (existing != null) {
+                if (existing.instant > event.getInstant()) {
+                    return;
+                }
+                sum -= existing.value;
+            }
+            userEvents.put(event.getUser(), new UserEvent(event.getId(), event.getInstant(), value));
+            sum += value;
+        }
+
+        synchronized boolean isLatest(Event event) {
+            UserEvent existing = userEvents.get(event.getUser());
+            return existing != null && Objects.equals(existing.id, event.getId());
+        }
+
+        // removes the event if it is the latest event of its user
+        synchronized boolean remove(Event event) {
+            UserEvent existing = userEvents.get(event.getUser());
+            if (existing == null || !Objects.equals(existing.id, event.getId())) {
+                return false;
+            }
+            userEvents.remove(event.getUser());
+            sum -= existing.value;
+            return true;
+        }
+
+        synchronized void removeUser(String user) {
+            UserEvent existing = userEvents.remove(user);
+            if (existing != null) {
+                sum -= existing.value;
+            }
+        }
+
+        synchronized int getCount() {
+            return userEvents.size();
+        }
+
+        synchronized double getSum() {
+            return sum;
+        }
+
+        synchronized List<Float> getValues() {
+            List<Float> values = new ArrayList<>(userEvents.size());
+            for (UserEvent userEvent : userEvents.values()) {
+                values.add(userEvent.value);
+            }
+            return values;
+        }
+    }
+
+    private static class UserEvent {
+        private final String id;
+        private final long instant;
+        private final float value;
+
+        UserEvent(String id, long instant, float value) {
+            this.id = id;
+            this.instant = instant;
+            this.value = value;
+        }
+    }
+}
@@ -39,10 +39,7 @@ public class FacetLabelService {
     @SuppressWarnings("unchecked")
     public List<Facet> createLabels(List<Facet> facets) {
         List<Facet> enrichedFacets = new TreeList(); // unchecked warning here
-        FacetFilter ff = new FacetFilter();
-        ff.setQuantity(10000);
-        Map<String, String> providerNames = providerService.getAll(ff, null)
-                .getResults()
+        Map<String, String> providerNames = providerService.getAllResults(new FacetFilter())
                 .stream().collect(Collectors.toMap(ProviderBundle::getId, p -> p.getProvider().getName()));
         Map<String, Vocabulary> allVocabularies = vocabularyService.getVocabulariesMap();
 
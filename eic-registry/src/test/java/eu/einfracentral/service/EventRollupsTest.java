@@ -0,0 +1,308 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.domain.Event;
+import eu.einfracentral.exception.ResourceException;
+import eu.openminted.registry.core.domain.Resource;
+import eu.openminted.registry.core.service.ParserService;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class EventRollupsTest {
+
+    private static final String RATING = Event.UserActionType.RATING.getKey();
+    private static final String FAVOURITE = Event.UserActionType.FAVOURITE.getKey();
+
+    private static final LocalDate MONDAY = LocalDate.of(2020, 3, 2);
+
+    private InMemoryRollupIndex index;
+    private EventRollups rollups;
+
+    @Before
+    public void setUp() {
+        index = new InMemoryRollupIndex();
+        index.state = new EventRollupIndex.State().setBuiltAt(1L);
+        rollups = new EventRollups(null, null, index, 60);
+        rollups.build();
+    }
+
+    @Test
+    public void daysAreMergedIntoBuckets() {
+        SortedMap<LocalDate, double[]> days = new TreeMap<>();
+        days.put(MONDAY, new double[]{1, 4});
+        days.put(MONDAY.plusDays(6), new double[]{2, 6});
+        days.put(MONDAY.plusDays(7), new double[]{1, 5});
+
+        SortedMap<String, double[]> weeks = EventRollups.toBuckets(days, StatisticsService.Interval.WEEK);
+        assertEquals(2, weeks.size());
+        assertArrayEquals(new double[]{3, 10}, weeks.get("2020-03-02"), 0);
+        assertArrayEquals(new double[]{1, 5}, weeks.get("2020-03-09"), 0);
+
+        SortedMap<String, double[]> months = EventRollups.toBuckets(days, StatisticsService.Interval.MONTH);
+        assertEquals(1, months.size());
+        assertArrayEquals(new double[]{4, 15}, months.get("2020-03"), 0);
+    }
+
+    @Test
+    public void bucketsBetweenDaysAreIncludedEmpty() {
+        SortedMap<LocalDate, double[]> days = new TreeMap<>();
+        days.put(LocalDate.of(2020, 1, 31), new double[]{1, 1});
+        days.put(LocalDate.of(2020, 4, 1), new double[]{1, 1});
+
+        SortedMap<String, double[]> months = EventRollups.toBuckets(days, StatisticsService.Interval.MONTH);
+        assertEquals(4, months.size());
+        assertArrayEquals(new double[]{0, 0}, months.get("2020-02"), 0);
+        assertArrayEquals(new double[]{0, 0}, months.get("2020-03"), 0);
+        assertEquals("2020-01", months.firstKey());
+        assertEquals("2020-04", months.lastKey());
+    }
+
+    @Test
+    public void onlyValidRatingsAndFavouritesAreRolledUp() {
+        Map<EventRollupIndex.Key, double[]> days = new HashMap<>();
+        assertTrue(EventRollups.add(days, createEvent(RATING, "service", "4", MONDAY), 1));
+        assertTrue(EventRollups.add(days, createEvent(FAVOURITE, "service", "1", MONDAY), 1));
+        assertFalse(EventRollups.add(days, createEvent("visit", "service", "1", MONDAY), 1));
+        assertFalse(EventRollups.add(days, createEvent(RATING, "service", "four", MONDAY), 1));
+        assertFalse(EventRollups.add(days, createEvent(RATING, null, "4", MONDAY), 1));
+
+        assertEquals(2, days.size());
+        assertArrayEquals(new double[]{1, 4}, days.get(new EventRollupIndex.Key(RATING, "service", MONDAY)), 0);
+    }
+
+    @Test
+    public void writesAreSentWhenFlushed() {
+        rollups.write(changes -> changes.added(createEvent(RATING, "service", "4", MONDAY)));
+        rollups.write(changes -> changes.added(createEvent(RATING, "service", "2", MONDAY)));
+        assertTrue(index.rollups.isEmpty());
+        // the changes that are not sent are served
+        assertArrayEquals(new double[]{2, 6}, getDay("service", MONDAY), 0);
+
+        rollups.flush();
+        assertEquals(1, index.bulks);
+        assertArrayEquals(new double[]{2, 6}, index.rollups.get(new EventRollupIndex.Key(RATING, "service", MONDAY)), 0);
+        assertArrayEquals(new double[]{2, 6}, getDay("service", MONDAY), 0);
+    }
+
+    @Test
+    public void replacedEventsAreSubtracted() {
+        Event rating = createEvent(RATING, "service", "4", MONDAY);
+        rollups.write(changes -> changes.added(rating));
+        rollups.flush();
+
+        // an update moves the rating to the day it was made
+        Event update = createEvent(RATING, "service", "2", MONDAY.plusDays(3));
+        rollups.write(changes -> changes.removed(rating).added(update));
+        rollups.flush();
+
+        SortedMap<String, double[]> days = rollups.getBuckets(RATING, "service", StatisticsService.Interval.DAY);
+        assertEquals(1, days.size());
+        assertArrayEquals(new double[]{1, 2}, days.get("2020-03-05"), 0);
+    }
+
+    @Test
+    public void changesOfFailedWritesAreRecorded() {
+        try {
+            rollups.write(changes -> {
+                changes.removed(createEvent(RATING, "service", "4", MONDAY));
+                throw new IllegalStateException("write failed");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // the write may have been applied
+        }
+        rollups.flush();
+        assertArrayEquals(new double[]{-1, -4}, index.rollups.get(new EventRollupIndex.Key(RATING, "service", MONDAY)), 0);
+    }
+
+    @Test
+    public void failedIncrementsAreRetried() {
+        rollups.write(changes -> changes.added(createEvent(RATING, "service", "4", MONDAY)));
+        index.failures = 1;
+        rollups.flush();
+        assertTrue(index.rollups.isEmpty());
+        assertArrayEquals(new double[]{1, 4}, getDay("service", MONDAY), 0);
+
+        rollups.write(changes -> changes.added(createEvent(RATING, "service", "3", MONDAY)));
+        rollups.flush();
+        assertArrayEquals(new double[]{2, 7}, index.rollups.get(new EventRollupIndex.Key(RATING, "service", MONDAY)), 0);
+    }
+
+    @Test
+    public void rollupsAreBuiltFromTheEventIndex() throws Exception {
+        index.state = null;
+        index.rollups.put(new EventRollupIndex.Key(RATING, "stale", MONDAY), new double[]{5, 5});
+        PayloadParser payloadParser = new PayloadParser(null, null);
+        List<Resource> events = Arrays.asList(
+                toResource(payloadParser, createEvent(RATING, "service", "4", MONDAY)),
+                toResource(payloadParser, createEvent(RATING, "service", "2", MONDAY)),
+                toResource(payloadParser, createEvent(FAVOURITE, "service", "1", MONDAY.plusDays(1))));
+        SearchServiceEIC searchService = new SearchServiceEIC() {
+            @Override
+            public <T> Iterator<List<T>> cursor(String resourceType, QueryBuilder query, Function<Resource, T> mapper) {
+                return Stream.of(events.subList(0, 2), events.subList(2, 3))
+                        .map(page -> page.stream().map(mapper).collect(Collectors.toList()))
+                        .iterator();
+            }
+        };
+        EventRollups built = new EventRollups(searchService, payloadParser, index, 60);
+        // written before the build, so part of the events it reads
+        built.write(changes -> changes.added(createEvent(RATING, "service", "5", MONDAY)));
+        built.build();
+        built.flush();
+
+        assertTrue(built.isAvailable());
+        assertNotNull(index.state.getBuiltAt());
+        assertNull(index.state.getClaimedAt());
+        assertFalse(index.rollups.containsKey(new EventRollupIndex.Key(RATING, "stale", MONDAY)));
+        assertArrayEquals(new double[]{2, 6}, index.rollups.get(new EventRollupIndex.Key(RATING, "service", MONDAY)), 0);
+        assertArrayEquals(new double[]{1, 1},
+                index.rollups.get(new EventRollupIndex.Key(FAVOURITE, "service", MONDAY.plusDays(1))), 0);
+    }
+
+    @Test
+    public void statisticsAreUnavailableUntilBuilt() {
+        index.state = null;
+        EventRollups unbuilt = new EventRollups(null, null, index, 60);
+        try {
+            unbuilt.getBuckets(RATING, "service", StatisticsService.Interval.DAY);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        }
+        assertFalse(unbuilt.isAvailable());
+    }
+
+    @Test
+    public void compactedEventsAreNotRolledUpAgain() {
+        index.state = new EventRollupIndex.State().setCompactedAt(1L);
+        EventRollups unbuilt = new EventRollups(null, null, index, 60);
+        unbuilt.build();
+
+        assertFalse(unbuilt.isAvailable());
+        assertNull(index.state.getClaimedAt());
+    }
+
+    @Test
+    public void buildOfAnotherNodeIsNotTakenOver() {
+        index.state = new EventRollupIndex.State().setClaimedAt(System.currentTimeMillis());
+        EventRollups unbuilt = new EventRollups(null, null, index, 60);
+        unbuilt.build();
+
+        assertFalse(unbuilt.isAvailable());
+        assertFalse(index.cleared);
+    }
+
+    @Test
+    public void compactionIsRecordedOnce() {
+        rollups.markCompacted();
+        Long compactedAt = index.state.getCompactedAt();
+        assertNotNull(compactedAt);
+        assertEquals(Long.valueOf(1L), index.state.getBuiltAt());
+
+        rollups.markCompacted();
+        assertEquals(compactedAt, index.state.getCompactedAt());
+    }
+
+    private double[] getDay(String service, LocalDate day) {
+        return rollups.getBuckets(RATING, service, StatisticsService.Interval.DAY).get(day.toString());
+    }
+
+    private static Resource toResource(PayloadParser payloadParser, Event event) {
+        Resource resource = new Resource();
+        resource.setPayload(payloadParser.serialize(event, ParserService.ParserServiceTypes.JSON));
+        resource.setPayloadFormat("json");
+        return resource;
+    }
+
+    private static Event createEvent(String type, String service, String value, LocalDate day) {
+        Event event = new Event(type, "user", service, value);
+        event.setInstant(day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() + 1000);
+        return event;
+    }
+
+    private static class InMemoryRollupIndex extends EventRollupIndex {
+
+        private final Map<Key, double[]> rollups = new HashMap<>();
+        private State state = null;
+        private int failures = 0;
+        private int bulks = 0;
+        private boolean cleared = false;
+
+        InMemoryRollupIndex() {
+            super(null, "event_rollups", 10);
+        }
+
+        @Override
+        public void create() {
+        }
+
+        @Override
+        public State getState() {
+            return state;
+        }
+
+        @Override
+        public boolean putState(State current, State state) {
+            if (current != this.state) {
+                return false;
+            }
+            this.state = state;
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            rollups.clear();
+            cleared = true;
+        }
+
+        @Override
+        public void refresh(String otherIndex) {
+        }
+
+        @Override
+        public Map<Key, double[]> increment(Map<Key, double[]> increments) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("bulk failed");
+            }
+            bulks++;
+            increments.forEach((key, increment) -> {
+                double[] rollup = rollups.computeIfAbsent(key, k -> new double[2]);
+                rollup[0] += increment[0];
+                rollup[1] += increment[1];
+            });
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, SortedMap<LocalDate, double[]>> getDays(String eventType, Collection<String> serviceIds) {
+            Map<String, SortedMap<LocalDate, double[]>> services = new HashMap<>();
+            rollups.forEach((key, rollup) -> {
+                if (key.getType().equals(eventType) && serviceIds.contains(key.getService()) && rollup[0] > 0) {
+                    services.computeIfAbsent(key.getService(), k -> new TreeMap<>()).put(key.getDay(), rollup.clone());
+                }
+            });
+            return services;
+        }
+    }
+}
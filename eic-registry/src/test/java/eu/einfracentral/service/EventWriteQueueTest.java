@@ -0,0 +1,214 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.domain.Event;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventWriteQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journal;
+    private EventWriteQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        journal = folder.getRoot().toPath().resolve("events.journal");
+        queue = createQueue();
+    }
+
+    @Test
+    public void journalDefaultsToTheTempDirectory() {
+        Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+        assertTrue(new EventWriteQueue(10, 100, " ").getJournal().startsWith(tmp));
+    }
+
+    @Test
+    public void deleteOfQueuedAddIsNeverWritten() {
+        Event event = createEvent("1", "5");
+        queue.add(event);
+        queue.delete(event);
+
+        assertEquals(0, queue.size());
+        assertTrue(queue.peek(10).isEmpty());
+    }
+
+    @Test
+    public void deleteWhileAddIsWrittenIsQueued() {
+        Event event = createEvent("1", "5");
+        queue.add(event);
+        List<EventWriteQueue.PendingEvent> batch = queue.peek(10);
+        queue.delete(event);
+        queue.done(batch);
+
+        List<EventWriteQueue.PendingEvent> pending = queue.getPending();
+        assertEquals(1, pending.size());
+        assertEquals(EventWriteQueue.Operation.DELETE, pending.get(0).getOperation());
+        assertTrue(queue.isDeleted("1"));
+    }
+
+    @Test
+    public void updateWhileAddIsWrittenIsQueuedAsUpdate() {
+        Event event = createEvent("1", "5");
+        queue.add(event);
+        List<EventWriteQueue.PendingEvent> batch = queue.peek(10);
+        queue.update(createEvent("1", "3"));
+        queue.done(batch);
+
+        List<EventWriteQueue.PendingEvent> pending = queue.getPending();
+        assertEquals(1, pending.size());
+        assertEquals(EventWriteQueue.Operation.UPDATE, pending.get(0).getOperation());
+        assertEquals("3", pending.get(0).getEvent().getValue());
+    }
+
+    @Test
+    public void failedAddSupersededByUpdateIsRetriedAsAdd() {
+        queue.add(createEvent("1", "5"));
+        List<EventWriteQueue.PendingEvent> batch = queue.peek(10);
+        queue.update(createEvent("1", "3"));
+        queue.retry(batch);
+
+        List<EventWriteQueue.PendingEvent> pending = queue.getPending();
+        assertEquals(1, pending.size());
+        assertEquals(EventWriteQueue.Operation.ADD, pending.get(0).getOperation());
+        assertEquals("3", pending.get(0).getEvent().getValue());
+        assertEquals(1, pending.get(0).getAttempts());
+    }
+
+    @Test
+    public void failedAddSupersededByDeleteIsDropped() {
+        Event event = createEvent("1", "5");
+        queue.add(event);
+        List<EventWriteQueue.PendingEvent> batch = queue.peek(10);
+        queue.delete(event);
+        queue.retry(batch);
+
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void writtenEventsAreRemoved() {
+        queue.add(createEvent("1", "5"));
+        queue.add(createEvent("2", "4"));
+        queue.done(queue.peek(1));
+
+        List<EventWriteQueue.PendingEvent> pending = queue.getPending();
+        assertEquals(1, pending.size());
+        assertEquals("2", pending.get(0).getEvent().getId());
+        assertFalse(queue.isPending("1"));
+    }
+
+    @Test
+    public void queuedWritesAreReplayed() throws IOException {
+        queue.add(createEvent("1", "5"));
+        queue.update(createEvent("1", "4"));
+        queue.add(createEvent("2", "3"));
+        queue.delete(createEvent("2", "3"));
+        queue.add(createEvent("3", "2"));
+        List<EventWriteQueue.PendingEvent> batch = queue.peek(10);
+        queue.update(createEvent("3", "1"));
+        queue.done(batch);
+
+        EventWriteQueue replayed = createQueue();
+        List<EventWriteQueue.PendingEvent> pending = replayed.getPending();
+        assertEquals(2, pending.size());
+        assertEquals("1", pending.get(0).getEvent().getId());
+        assertEquals(EventWriteQueue.Operation.ADD, pending.get(0).getOperation());
+        assertEquals("4", pending.get(0).getEvent().getValue());
+        // whether the add was written is not journaled, the replayed add is written as an update if the event exists
+        assertEquals("3", pending.get(1).getEvent().getId());
+        assertEquals(EventWriteQueue.Operation.ADD, pending.get(1).getOperation());
+        assertEquals("1", pending.get(1).getEvent().getValue());
+        for (EventWriteQueue.PendingEvent pendingEvent : pending) {
+            assertTrue(pendingEvent.isReplayed());
+        }
+    }
+
+    @Test
+    public void checkpointKeepsWritesMergedWhileWriting() throws IOException {
+        queue.add(createEvent("1", "5"));
+        List<EventWriteQueue.PendingEvent> batch = queue.peek(10);
+        queue.update(createEvent("1", "3"));
+        queue.done(batch);
+        queue.checkpoint();
+
+        List<EventWriteQueue.PendingEvent> pending = createQueue().getPending();
+        assertEquals(1, pending.size());
+        assertEquals(EventWriteQueue.Operation.UPDATE, pending.get(0).getOperation());
+        assertEquals("3", pending.get(0).getEvent().getValue());
+    }
+
+    @Test
+    public void journalRecordsAreReplayedInMergeOrder() throws IOException {
+        queue.add(createEvent("1", "5"));
+        queue.delete(createEvent("1", "5"));
+        // the records of concurrent writers may be appended out of order
+        List<String> lines = new ArrayList<>(Files.readAllLines(journal, StandardCharsets.UTF_8));
+        assertEquals(2, lines.size());
+        Files.write(journal, new StringBuilder().append(lines.get(1)).append('\n').append(lines.get(0)).append('\n')
+                .toString().getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, createQueue().size());
+    }
+
+    @Test
+    public void incompleteJournalRecordIsSkipped() throws IOException {
+        queue.add(createEvent("1", "5"));
+        Files.write(journal, "{\"seq\":2,\"operation\":\"DEL".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        EventWriteQueue replayed = createQueue();
+        assertEquals(1, replayed.size());
+        assertTrue(replayed.isPending("1"));
+    }
+
+    @Test
+    public void checkpointDropsWrittenEventsFromJournal() throws IOException {
+        queue.add(createEvent("1", "5"));
+        queue.add(createEvent("2", "4"));
+        queue.done(queue.peek(1));
+        queue.checkpoint();
+
+        assertEquals(1, Files.readAllLines(journal, StandardCharsets.UTF_8).size());
+        assertEquals(1, createQueue().size());
+    }
+
+    @Test
+    public void pendingEventsWithoutUserAreIgnored() {
+        Event event = createEvent("1", "5");
+        event.setUser(null);
+        queue.add(event);
+        queue.add(createEvent("2", "4"));
+
+        assertEquals(1, queue.getPending("user").size());
+        assertNotNull(queue.getPending("rating", "service", "user"));
+        assertNull(queue.getPending("rating", "service", "other"));
+    }
+
+    private EventWriteQueue createQueue() throws IOException {
+        EventWriteQueue eventWriteQueue = new EventWriteQueue(100, 100, journal.toString());
+        eventWriteQueue.replayJournal();
+        return eventWriteQueue;
+    }
+
+    private static Event createEvent(String id, String value) {
+        Event event = new Event("rating", "user", "service", value);
+        event.setId(id);
+        event.setInstant(Long.parseLong(id));
+        return event;
+    }
+}
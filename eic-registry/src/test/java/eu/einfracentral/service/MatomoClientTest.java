@@ -0,0 +1,137 @@
+package eu.einfracentral.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MatomoClientTest {
+
+    private HttpServer server;
+    private String url;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = 200;
+    // requests wait for it, if it is set
+    private volatile CountDownLatch release = null;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            CountDownLatch latch = release;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{\"value\": 1}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void circuitOpensAfterConsecutiveFailures() {
+        MatomoClient client = createClient(60);
+        status = 500;
+
+        assertNull(client.get(url));
+        assertFalse(client.isOpen());
+        assertNull(client.get(url));
+        assertTrue(client.isOpen());
+
+        // fails immediately
+        status = 200;
+        assertNull(client.get(url));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void successResetsTheFailures() {
+        MatomoClient client = createClient(60);
+        status = 500;
+        assertNull(client.get(url));
+        status = 200;
+        assertNotNull(client.get(url));
+        status = 500;
+        assertNull(client.get(url));
+
+        assertFalse(client.isOpen());
+    }
+
+    @Test
+    public void halfOpenCircuitLetsASingleProbeThrough() throws Exception {
+        MatomoClient client = createClient(0);
+        status = 500;
+        client.get(url);
+        client.get(url);
+
+        status = 200;
+        release = new CountDownLatch(1);
+        Future<Object> probe = executor.submit(() -> client.get(url));
+        while (requests.get() < 3) {
+            Thread.sleep(10);
+        }
+        // the probe is running
+        assertTrue(client.isOpen());
+        assertNull(client.get(url));
+        assertEquals(3, requests.get());
+
+        release.countDown();
+        assertNotNull(probe.get(5, TimeUnit.SECONDS));
+        release = null;
+        assertFalse(client.isOpen());
+        assertNotNull(client.get(url));
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void failedProbeOpensTheCircuitAgain() throws Exception {
+        MatomoClient client = createClient(1);
+        status = 500;
+        client.get(url);
+        client.get(url);
+        assertTrue(client.isOpen());
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertFalse(client.isOpen());
+        assertNull(client.get(url));
+        assertEquals(3, requests.get());
+
+        assertTrue(client.isOpen());
+        assertNull(client.get(url));
+        assertEquals(3, requests.get());
+    }
+
+    private static MatomoClient createClient(long openSeconds) {
+        return new MatomoClient("token", 4, 1000, 5000, 2, openSeconds);
+    }
+}
@@ -0,0 +1,111 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.domain.InfraService;
+import eu.einfracentral.domain.Metadata;
+import eu.einfracentral.domain.RichService;
+import eu.einfracentral.domain.Service;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RichServiceStoreTest {
+
+    private RichServiceStore store;
+    private InfraService infraService;
+
+    @Before
+    public void setUp() {
+        store = new RichServiceStore(30, 100);
+        infraService = createInfraService("service", "1.0", "1000");
+    }
+
+    @Test
+    public void storedFieldsAreServedForTheSameService() {
+        store.put(infraService, createRichService(infraService, "English"));
+
+        RichService richService = store.get(createInfraService("service", "1.0", "1000"));
+        assertNotNull(richService);
+        assertEquals(Collections.singletonList("English"), richService.getLanguageNames());
+        assertEquals("TRL 9", richService.getTrlName());
+        assertEquals("service", richService.getService().getId());
+    }
+
+    @Test
+    public void servedServicesAreNewInstances() {
+        store.put(infraService, createRichService(infraService, "English"));
+
+        RichService first = store.get(infraService);
+        first.setViews(10);
+        assertNotSame(first, store.get(infraService));
+        assertEquals(0, store.get(infraService).getViews());
+    }
+
+    @Test
+    public void changedServiceIsNotServed() {
+        store.put(infraService, createRichService(infraService, "English"));
+
+        assertNull(store.get(createInfraService("service", "2.0", "1000")));
+        assertNull(store.get(createInfraService("service", "1.0", "2000")));
+        assertNull(store.get(createInfraService("other", "1.0", "1000")));
+
+        InfraService inactive = createInfraService("service", "1.0", "1000");
+        inactive.setActive(false);
+        assertNull(store.get(inactive));
+
+        InfraService notLatest = createInfraService("service", "1.0", "1000");
+        notLatest.setLatest(false);
+        assertNull(store.get(notLatest));
+    }
+
+    @Test
+    public void storedListsAreCopies() {
+        RichService richService = createRichService(infraService, "English");
+        store.put(infraService, richService);
+        richService.getLanguageNames().add("Greek");
+
+        assertEquals(Collections.singletonList("English"), store.get(infraService).getLanguageNames());
+    }
+
+    @Test
+    public void changedSourcesEmptyTheStore() {
+        Object vocabularies = new Object();
+        Object providers = new Object();
+        store.checkSources(vocabularies, providers);
+        store.put(infraService, createRichService(infraService, "English"));
+
+        store.checkSources(vocabularies, providers);
+        assertNotNull(store.get(infraService));
+
+        store.checkSources(vocabularies, new Object());
+        assertNull(store.get(infraService));
+        assertEquals(0, store.size());
+    }
+
+    private static InfraService createInfraService(String id, String version, String modifiedAt) {
+        Service service = new Service();
+        service.setId(id);
+        service.setVersion(version);
+        Metadata metadata = new Metadata();
+        metadata.setModifiedAt(modifiedAt);
+        InfraService infraService = new InfraService(service);
+        infraService.setMetadata(metadata);
+        infraService.setActive(true);
+        infraService.setLatest(true);
+        infraService.setStatus("approved");
+        return infraService;
+    }
+
+    private static RichService createRichService(InfraService infraService, String... languageNames) {
+        RichService richService = new RichService(infraService);
+        List<String> names = new ArrayList<>(Arrays.asList(languageNames));
+        richService.setLanguageNames(names);
+        richService.setTrlName("TRL 9");
+        return richService;
+    }
+}
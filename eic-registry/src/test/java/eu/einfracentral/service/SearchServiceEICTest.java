@@ -0,0 +1,61 @@
+package eu.einfracentral.service;
+
+import eu.openminted.registry.core.domain.Resource;
+import eu.openminted.registry.core.domain.ResourceType;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SearchServiceEICTest {
+
+    @Test
+    public void hitSourceIsMappedToResource() {
+        ResourceType resourceType = new ResourceType();
+        resourceType.setName("event");
+        Map<String, Object> source = createSource();
+
+        Resource resource = SearchServiceEIC.toResource("hit", source, resourceType);
+
+        assertEquals("resource", resource.getId());
+        assertSame(resourceType, resource.getResourceType());
+        assertEquals("<event/>", resource.getPayload());
+        assertEquals("xml", resource.getPayloadFormat());
+        assertEquals("2", resource.getVersion());
+        assertEquals(new Date(1000L), resource.getCreationDate());
+        assertEquals(new Date(2000L), resource.getModificationDate());
+    }
+
+    @Test
+    public void hitIdIsUsedWithoutSourceId() {
+        Map<String, Object> source = createSource();
+        source.remove(SearchServiceEIC.FIELD_ID);
+
+        assertEquals("hit", SearchServiceEIC.toResource("hit", source, null).getId());
+    }
+
+    @Test
+    public void datesAreParsedFromStrings() {
+        Map<String, Object> source = createSource();
+        source.put(SearchServiceEIC.FIELD_CREATION_DATE, "3000");
+        source.put(SearchServiceEIC.FIELD_MODIFICATION_DATE, "not a date");
+
+        Resource resource = SearchServiceEIC.toResource("hit", source, null);
+        assertEquals(new Date(3000L), resource.getCreationDate());
+        assertNull(resource.getModificationDate());
+    }
+
+    private static Map<String, Object> createSource() {
+        Map<String, Object> source = new HashMap<>();
+        source.put(SearchServiceEIC.FIELD_ID, "resource");
+        source.put(SearchServiceEIC.FIELD_PAYLOAD, "<event/>");
+        source.put(SearchServiceEIC.FIELD_PAYLOAD_FORMAT, "xml");
+        source.put(SearchServiceEIC.FIELD_VERSION, "2");
+        source.put(SearchServiceEIC.FIELD_CREATION_DATE, 1000L);
+        source.put(SearchServiceEIC.FIELD_MODIFICATION_DATE, 2000L);
+        return source;
+    }
+}
@@ -0,0 +1,183 @@
+package eu.einfracentral.service;
+
+import eu.einfracentral.domain.Event;
+import eu.einfracentral.registry.service.EventService;
+import eu.openminted.registry.core.domain.FacetFilter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ServiceEventAggregatesTest {
+
+    private static final String RATING = Event.UserActionType.RATING.getKey();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // the events of the event index
+    private final List<Event> events = new ArrayList<>();
+    private int queries = 0;
+    // runs when the event index is queried, if it is set
+    private Runnable onQuery = null;
+    private EventWriteQueue eventWriteQueue;
+    private ServiceEventAggregates aggregates;
+
+    @Before
+    public void setUp() throws IOException {
+        eventWriteQueue = new EventWriteQueue(100, 100, folder.getRoot().toPath().resolve("events.journal").toString());
+        eventWriteQueue.replayJournal();
+        EventService eventService = (EventService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{EventService.class}, (proxy, method, args) -> {
+                    if (!"getAllResults".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return getAllResults((FacetFilter) args[0]);
+                });
+        aggregates = new ServiceEventAggregates(eventService, eventWriteQueue);
+    }
+
+    @Test
+    public void latestEventOfEachUserIsLoaded() {
+        events.add(createEvent("1", "user", "4", 1));
+        events.add(createEvent("2", "user", "2", 2));
+        events.add(createEvent("3", "other", "5", 1));
+        aggregates.rebuild();
+
+        assertEquals(2, aggregates.getCount(RATING, "service"));
+        assertEquals(7, aggregates.getSum(RATING, "service"), 0);
+        assertEquals(0, aggregates.getCount(RATING, "other service"));
+    }
+
+    @Test
+    public void writesAreIgnoredUntilLoaded() {
+        aggregates.add(createEvent("1", "user", "4", 1));
+        assertEquals(0, aggregates.getCount(RATING, "service"));
+
+        events.add(createEvent("1", "user", "4", 1));
+        aggregates.rebuild();
+        assertEquals(1, aggregates.getCount(RATING, "service"));
+    }
+
+    @Test
+    public void queuedWritesAreLoaded() {
+        events.add(createEvent("1", "user", "4", 1));
+        events.add(createEvent("2", "other", "5", 1));
+        eventWriteQueue.add(createEvent("3", "user", "2", 2));
+        eventWriteQueue.delete(createEvent("2", "other", "5", 1));
+        aggregates.rebuild();
+
+        assertEquals(1, aggregates.getCount(RATING, "service"));
+        assertEquals(2, aggregates.getSum(RATING, "service"), 0);
+    }
+
+    @Test
+    public void writesDuringTheLoadAreReplayed() {
+        events.add(createEvent("1", "user", "4", 1));
+        aggregates.rebuild();
+
+        Event update = createEvent("2", "user", "2", 2);
+        Event other = createEvent("3", "other", "5", 1);
+        onQuery = () -> {
+            onQuery = null;
+            aggregates.add(update);
+            aggregates.add(other);
+            // served from the current aggregates until the load completes
+            assertEquals(2, aggregates.getCount(RATING, "service"));
+        };
+        aggregates.rebuild();
+
+        assertEquals(2, aggregates.getCount(RATING, "service"));
+        assertEquals(7, aggregates.getSum(RATING, "service"), 0);
+    }
+
+    @Test
+    public void removedLatestEventFallsBackToThePreviousOne() {
+        Event first = createEvent("1", "user", "4", 1);
+        Event second = createEvent("2", "user", "2", 2);
+        events.add(first);
+        events.add(second);
+        aggregates.rebuild();
+        assertEquals(2, aggregates.getSum(RATING, "service"), 0);
+
+        // the search service may still return the removed event
+        aggregates.remove(second);
+        assertEquals(1, aggregates.getCount(RATING, "service"));
+        assertEquals(4, aggregates.getSum(RATING, "service"), 0);
+    }
+
+    @Test
+    public void previousEventsQueuedForDeletionAreSkipped() {
+        Event first = createEvent("1", "user", "4", 1);
+        Event second = createEvent("2", "user", "2", 2);
+        events.add(first);
+        events.add(second);
+        aggregates.rebuild();
+
+        eventWriteQueue.delete(first);
+        aggregates.remove(second);
+        assertEquals(0, aggregates.getCount(RATING, "service"));
+        assertEquals(0, aggregates.getSum(RATING, "service"), 0);
+    }
+
+    @Test
+    public void removedOlderEventIsNotLookedUp() {
+        Event first = createEvent("1", "user", "4", 1);
+        events.add(first);
+        events.add(createEvent("2", "user", "2", 2));
+        aggregates.rebuild();
+        int loadQueries = queries;
+
+        aggregates.remove(first);
+        assertEquals(loadQueries, queries);
+        assertEquals(2, aggregates.getSum(RATING, "service"), 0);
+    }
+
+    @Test
+    public void removedUserIsDiscarded() {
+        events.add(createEvent("1", "user", "4", 1));
+        events.add(createEvent("2", "other", "5", 1));
+        aggregates.rebuild();
+
+        aggregates.removeUser("user");
+        assertEquals(1, aggregates.getCount(RATING, "service"));
+        assertEquals(5, aggregates.getSum(RATING, "service"), 0);
+        assertEquals(1, aggregates.getValues(RATING).get("service").size());
+    }
+
+    private List<Event> getAllResults(FacetFilter ff) {
+        queries++;
+        if (onQuery != null) {
+            onQuery.run();
+        }
+        Map<String, Function<Event, String>> fields = new HashMap<>();
+        fields.put("type", Event::getType);
+        fields.put("service", Event::getService);
+        fields.put("event_user", Event::getUser);
+        return events.stream()
+                .filter(event -> ff.getFilter().entrySet().stream()
+                        .allMatch(filter -> Objects.equals(fields.get(filter.getKey()).apply(event), filter.getValue())))
+                .sorted(Comparator.comparingLong(Event::getInstant).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static Event createEvent(String id, String user, String value, long instant) {
+        Event event = new Event(RATING, user, "service", value);
+        event.setId(id);
+        event.setInstant(instant);
+        return event;
+    }
+}